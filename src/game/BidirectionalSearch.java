@@ -0,0 +1,196 @@
+package game;
+
+// 双向 A*（推箱模式）：正向从初始状态推箱子，反向从终局状态“拉”箱子。终局状态为所有箱子都在目标上、
+// 英雄位于其余地板的任一连通区域。正向以箱子到目标的匹配为启发，反向以箱子拉回初始位置的匹配为启发，
+// 每次从开表较小的一边扩展。两边的状态用同一套 Zobrist 键（箱子位置加归一化的英雄格），一边新生成的状态
+// 出现在另一边的闭表里即为相遇。两边开表中较大的最小 f 不小于已知最短解时，不可能再有更短的解
+class BidirectionalSearch {
+    private static final int CHECK_INTERVAL = 256; // 每扩展这么多结点检查一次超时与取消
+
+    private final Board board;
+    private final long[] startBoxes;
+    private final int startHero;
+    private final Side forward, backward;
+    private final Reachability reach;
+    private final FreezeDetector freeze;
+    private final long[] boxes;
+    private final int[] moves;
+    private volatile boolean cancelled = false;
+    private boolean outOfMemory = false;
+    private int best = Integer.MAX_VALUE, meetForward = -1, meetBackward = -1;
+
+    // memoryBudget 为两边结点仓库与闭表共用的字节预算
+    BidirectionalSearch(Board board, long[] startBoxes, int startHero, long memoryBudget) {
+        this.board = board;
+        this.startBoxes = startBoxes;
+        this.startHero = startHero;
+        int[] starts = new int[board.goalCells.length];
+        for (int cell = 0, i = 0; cell < board.cells && i < starts.length; cell++) {
+            if (Board.has(startBoxes, cell)) starts[i++] = cell;
+        }
+        forward = new Side(memoryBudget / 2, new Matching(board));
+        backward = new Side(memoryBudget / 2, new Matching(board, starts.length, board.pushDistancesFrom(starts)));
+        reach = new Reachability(board);
+        freeze = new FreezeDetector(board);
+        boxes = new long[board.words];
+        moves = new int[board.cells * 4];
+    }
+
+    void cancel() { cancelled = true; }
+    int expanded() { return forward.expanded + backward.expanded; }
+    int forwardExpanded() { return forward.expanded; }
+    int backwardExpanded() { return backward.expanded; }
+
+    // 返回最少推动次数，或 NOT_FOUND / TIME_OUT / CANCELLED / OUT_OF_MEMORY
+    int run(long deadline) {
+        System.arraycopy(startBoxes, 0, boxes, 0, board.words);
+        int hero = reach.fill(boxes, 0, startHero);
+        forward.offer(backward, -1, board.key(boxes, hero), hero, (byte) 0, 0);
+
+        // 箱子全部放到目标上，英雄可能停在其余地板的每个连通区域
+        System.arraycopy(board.goals, 0, boxes, 0, board.words);
+        boolean[] seen = new boolean[board.cells];
+        for (int cell = 0; cell < board.cells; cell++) {
+            if (seen[cell] || Board.has(boxes, cell)) continue;
+            int region = reach.fill(boxes, 0, cell);
+            for (int other = cell; other < board.cells; other++) if (reach.reached(other)) seen[other] = true;
+            backward.offer(forward, -1, board.key(boxes, region), region, (byte) 0, 0);
+        }
+
+        int count = 0;
+        while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+            if (outOfMemory) return Search.OUT_OF_MEMORY;
+            if (best <= Math.max(forward.open.minF(), backward.open.minF())) break;
+            boolean isForward = forward.open.size() <= backward.open.size();
+            Side side = isForward ? forward : backward;
+            int cur = side.open.pop();
+            NodeStore store = side.store;
+            if (side.visited.get(store.key(cur)) != cur || store.cost(cur) + store.estimate(cur) >= best) continue;
+            if (isForward) {
+                expandPushes(cur);
+            } else {
+                expandPulls(cur);
+            }
+            side.expanded++;
+            if (++count % CHECK_INTERVAL != 0) continue;
+            if (System.currentTimeMillis() > deadline) return Search.TIME_OUT;
+            if (cancelled) return Search.CANCELLED;
+        }
+        // 一边的开表空了：它能到达的状态都已扩展，已知的相遇点就是最优的
+        if (outOfMemory) return Search.OUT_OF_MEMORY;
+        return best == Integer.MAX_VALUE ? Search.NOT_FOUND : best;
+    }
+
+    private void expandPushes(int cur) {
+        NodeStore store = forward.store;
+        int hero = store.hero(cur), count = reach.pushes(store.boxes(), store.offset(cur), hero, moves);
+
+        for (int i = 0; i < count; i++) {
+            int box = moves[i] / 4, dir = moves[i] % 4, target = board.next(box, dir);
+            store.copyBoxes(cur, boxes);
+            Board.flip(boxes, box);
+            Board.flip(boxes, target);
+            if (freeze.isDeadlock(boxes, target)) continue;
+            int newHero = reach.fill(boxes, 0, box);
+            long key = store.key(cur) ^ board.boxKeys[box] ^ board.boxKeys[target]
+                    ^ board.heroKeys[hero] ^ board.heroKeys[newHero];
+            forward.offer(backward, cur, key, newHero, (byte) dir, store.cost(cur) + 1);
+        }
+    }
+
+    // 拉动：英雄站在箱子旁边的 from 格，再往外一格 to 也空着，英雄退到 to，箱子跟到 from。
+    // move 记录拉动方向，正向看是反方向的一次推动
+    private void expandPulls(int cur) {
+        NodeStore store = backward.store;
+        long[] nodes = store.boxes();
+        int offset = store.offset(cur), hero = store.hero(cur), count = 0;
+        reach.fill(nodes, offset, hero);
+        for (int box = 0; box < board.cells; box++) {
+            if (!Board.has(nodes, offset, box)) continue;
+            for (int dir = 0; dir < 4; dir++) {
+                int from = board.next(box, dir), to = from < 0 ? -1 : board.next(from, dir);
+                if (to < 0 || !reach.reached(from) || !reach.reached(to)) continue;
+                moves[count++] = box * 4 + dir;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            int box = moves[i] / 4, dir = moves[i] % 4, from = board.next(box, dir), to = board.next(from, dir);
+            store.copyBoxes(cur, boxes);
+            Board.flip(boxes, box);
+            Board.flip(boxes, from);
+            int newHero = reach.fill(boxes, 0, to);
+            long key = store.key(cur) ^ board.boxKeys[box] ^ board.boxKeys[from]
+                    ^ board.heroKeys[hero] ^ board.heroKeys[newHero];
+            backward.offer(forward, cur, key, newHero, (byte) dir, store.cost(cur) + 1);
+        }
+    }
+
+    private void meet(int forwardNode, int backwardNode) {
+        int total = forward.store.cost(forwardNode) + backward.store.cost(backwardNode);
+        if (total >= best) return;
+        best = total;
+        meetForward = forwardNode;
+        meetBackward = backwardNode;
+    }
+
+    // 正向半段沿父指针回溯后逐次推动；反向半段从相遇点走向终局，每次拉动反过来就是一次推动
+    String steps() {
+        NodeStore store = forward.store;
+        int length = 0;
+        for (int cur = meetForward; store.parent(cur) >= 0; cur = store.parent(cur)) length++;
+        int[] chain = new int[length];
+        for (int cur = meetForward; store.parent(cur) >= 0; cur = store.parent(cur)) chain[--length] = cur;
+
+        StringBuilder steps = new StringBuilder();
+        int hero = startHero;
+        for (int cur : chain) {
+            hero = Search.appendPush(board, reach, store.boxes(), store.offset(store.parent(cur)), store.offset(cur),
+                    store.move(cur), hero, steps);
+        }
+        store = backward.store;
+        for (int cur = meetBackward; store.parent(cur) >= 0; cur = store.parent(cur)) {
+            hero = Search.appendPush(board, reach, store.boxes(), store.offset(cur), store.offset(store.parent(cur)),
+                    (store.move(cur) + 2) % 4, hero, steps);
+        }
+        return steps.toString();
+    }
+
+    // 一个方向的结点仓库、开表与闭表。同一状态找到更短的路径时再生成一个结点，旧结点出队时跳过
+    private final class Side {
+        final NodeStore store = new NodeStore(board.words, 0);
+        final BucketQueue open = new BucketQueue();
+        final StateTable visited;
+        final Matching matching;
+        final long memoryBudget;
+        int expanded = 0;
+
+        Side(long memoryBudget, Matching matching) {
+            this.memoryBudget = memoryBudget;
+            visited = new StateTable(memoryBudget);
+            this.matching = matching;
+        }
+
+        // boxes 中为新状态
+        void offer(Side other, int parent, long key, int hero, byte move, int cost) {
+            int existing = visited.get(key);
+            if (existing >= 0 && store.cost(existing) <= cost) return;
+            int estimate = matching.cost(boxes, 0);
+            if (estimate == Matching.INFINITE || cost + estimate >= best) return;
+
+            int node = store.add(boxes, key, hero, parent, move, cost, estimate);
+            if (!visited.put(key, node) || store.bytes() + visited.bytes() > memoryBudget) {
+                outOfMemory = true;
+                return;
+            }
+            open.push(node, cost + estimate, estimate);
+            int met = other.visited.get(key);
+            if (met < 0) return;
+            if (this == forward) {
+                meet(node, met);
+            } else {
+                meet(met, node);
+            }
+        }
+    }
+}
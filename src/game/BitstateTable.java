@@ -0,0 +1,55 @@
+package game;
+
+import java.util.Arrays;
+
+// 位状态哈希（两个哈希函数的 Bloom 过滤器）代替精确的闭表：每个状态只占 1~2 位，
+// 但不同状态可能互相冲突而被误当成已访问，冲突的状态及其后继会被漏掉，基于它的搜索是不完备的
+class BitstateTable {
+    private final long[] bits;
+    private final long mask;
+    private long states = 0, setBits = 0;
+
+    BitstateTable(long bytes) {
+        long count = Long.highestOneBit(Math.max(Math.min(bytes, 1L << 33) * 8, 64)); // long[] 最多约 2^31 个元素
+        bits = new long[(int) (count >>> 6)];
+        mask = count - 1;
+    }
+
+    // 位数组在堆上：预算与当前空闲堆的一半取小者，避免滑块调到上限时直接 OutOfMemoryError
+    static long affordable(long budget) {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return Math.min(budget, free / 2);
+    }
+
+    // 清空已访问的位，states 继续累计
+    void clear() {
+        Arrays.fill(bits, 0);
+        setBits = 0;
+    }
+
+    // 状态可能已访问过时返回 false，否则记下它并返回 true
+    boolean add(long key) {
+        long a = key & mask, b = Long.rotateLeft(key * 0x9E3779B97F4A7C15L, 29) & mask;
+        boolean seen = test(a) & test(b); // 两个位都要检查并置位，不能短路
+        if (!seen) states++;
+        return !seen;
+    }
+
+    private boolean test(long bit) {
+        int word = (int) (bit >>> 6);
+        long flag = 1L << bit;
+        if ((bits[word] & flag) != 0) return true;
+        bits[word] |= flag;
+        setBits++;
+        return false;
+    }
+
+    long states() { return states; }
+    long bytes() { return bits.length * 8L; }
+    // 新状态被误判为已访问的概率约为两个位都已置位的概率
+    double omissionProbability() {
+        double ratio = (double) setBits / (mask + 1);
+        return ratio * ratio;
+    }
+}
@@ -0,0 +1,177 @@
+package game;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+class Board {
+    static final int UNREACHABLE = 1 << 20;
+    private static final long ZOBRIST_SEED = 0x5ECB0BA11L;
+
+    final int rows, cols, cells, words;
+    final int[] cellX, cellY, goalCells;
+    final long[] goals, dead;
+    final long[] boxKeys, heroKeys; // Zobrist 随机数：状态的键为所有箱子格与英雄格对应随机数的异或
+    final long fingerprint; // 地图布局（尺寸、地板格、目标格）的指纹，区分不同关卡的持久化数据
+    private final int[] cellAt, next, pushDistances;
+
+    // map 中 '#' 为墙，'.' 为目标，'B' 为箱子，'X' 为目标上的箱子
+    Board(char[][] map, int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+
+        cellAt = new int[rows * cols];
+        int count = 0;
+        for (int x = 0; x < rows; x++) for (int y = 0; y < cols; y++) {
+            cellAt[x * cols + y] = map[x][y] == '#' ? -1 : count++;
+        }
+        cells = count;
+        words = (cells + 63) >>> 6;
+
+        cellX = new int[cells];
+        cellY = new int[cells];
+        next = new int[cells * 4];
+        goals = new long[words];
+        int goalCount = 0;
+        for (int x = 0; x < rows; x++) for (int y = 0; y < cols; y++) {
+            int cell = cellAt[x * cols + y];
+            if (cell < 0) continue;
+            cellX[cell] = x;
+            cellY[cell] = y;
+            for (int dir = 0; dir < 4; dir++) next[cell * 4 + dir] = cell(x + Solver.dx[dir], y + Solver.dy[dir]);
+            if (map[x][y] == '.' || map[x][y] == 'X') {
+                set(goals, cell);
+                goalCount++;
+            }
+        }
+
+        goalCells = new int[goalCount];
+        for (int cell = 0, i = 0; cell < cells; cell++) if (has(goals, cell)) goalCells[i++] = cell;
+
+        pushDistances = goalDistances();
+        dead = deadSquares();
+
+        SplittableRandom random = new SplittableRandom(ZOBRIST_SEED);
+        boxKeys = new long[cells];
+        heroKeys = new long[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            boxKeys[cell] = random.nextLong();
+            heroKeys[cell] = random.nextLong();
+        }
+
+        long hash = rows * 31L + cols;
+        for (int cell = 0; cell < cells; cell++) {
+            hash = hash * 31 + (cellX[cell] * cols + cellY[cell]) * 2 + (isGoal(cell) ? 1 : 0);
+        }
+        fingerprint = hash * 0x9E3779B97F4A7C15L;
+    }
+
+    // 从目标出发反向“拉”箱子：箱子从 cell 被拉到 next 需要英雄站在 next 再后退一格。
+    // 拉动的次数即推动次数的下界，任何目标都拉不到的格子就是死格
+    private int[] goalDistances() {
+        int[] distances = new int[goalCells.length * cells], queue = new int[cells];
+        Arrays.fill(distances, UNREACHABLE);
+        for (int goal = 0; goal < goalCells.length; goal++) {
+            int offset = goal * cells, head = 0, tail = 0;
+            distances[offset + goalCells[goal]] = 0;
+            queue[tail++] = goalCells[goal];
+            while (head < tail) {
+                int cell = queue[head++];
+                for (int dir = 0; dir < 4; dir++) {
+                    int next = next(cell, dir);
+                    if (next < 0 || distances[offset + next] != UNREACHABLE || next(next, dir) < 0) continue;
+                    distances[offset + next] = distances[offset + cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distances;
+    }
+
+    private long[] deadSquares() {
+        long[] dead = new long[words];
+        for (int cell = 0; cell < cells; cell++) {
+            boolean live = false;
+            for (int goal = 0; goal < goalCells.length && !live; goal++) live = pushDistance(goal, cell) != UNREACHABLE;
+            if (!live) set(dead, cell);
+        }
+        return dead;
+    }
+
+    // 越界或是墙时返回 -1
+    int cell(int x, int y) {
+        if (x < 0 || x >= rows || y < 0 || y >= cols) return -1;
+        return cellAt[x * cols + y];
+    }
+    int next(int cell, int dir) { return next[cell * 4 + dir]; }
+    boolean isGoal(int cell) { return has(goals, cell); }
+    boolean isDead(int cell) { return has(dead, cell); }
+    int pushDistance(int goal, int cell) { return pushDistances[goal * cells + cell]; }
+    int[] pushDistances() { return pushDistances; } // pushDistances[goal * cells + cell]
+
+    // 与 pushDistances 方向相反：只考虑墙，把 sources[i] 处的箱子推到各格所需的最少推动次数，
+    // 即从各格把箱子拉回 sources[i] 的拉动次数，结果位于 [i * cells, (i + 1) * cells)
+    int[] pushDistancesFrom(int[] sources) {
+        int[] distances = new int[sources.length * cells], queue = new int[cells];
+        Arrays.fill(distances, UNREACHABLE);
+        for (int i = 0; i < sources.length; i++) {
+            int offset = i * cells, head = 0, tail = 0;
+            distances[offset + sources[i]] = 0;
+            queue[tail++] = sources[i];
+            while (head < tail) {
+                int cell = queue[head++];
+                for (int dir = 0; dir < 4; dir++) {
+                    int next = next(cell, dir), behind = next(cell, (dir + 2) % 4);
+                    if (next < 0 || behind < 0 || distances[offset + next] != UNREACHABLE) continue;
+                    distances[offset + next] = distances[offset + cell] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distances;
+    }
+
+    long[] boxes(char[][] map) {
+        long[] boxes = new long[words];
+        for (int x = 0; x < rows; x++) for (int y = 0; y < cols; y++) {
+            if (map[x][y] == 'B' || map[x][y] == 'X') set(boxes, cell(x, y));
+        }
+        return boxes;
+    }
+
+    long key(long[] boxes, int hero) {
+        long key = heroKeys[hero];
+        for (int cell = 0; cell < cells; cell++) if (has(boxes, cell)) key ^= boxKeys[cell];
+        return key;
+    }
+
+    boolean isSolved(long[] boxes, int offset) {
+        for (int i = 0; i < words; i++) if ((boxes[offset + i] & ~goals[i]) != 0) return false;
+        return true;
+    }
+
+    // 从给定状态出发按 udlrUDLR 串逐步重放，每一步都合法且最后所有箱子都在目标上时返回 true
+    boolean replays(long[] boxes, int hero, String steps) {
+        long[] current = boxes.clone();
+        for (int i = 0; i < steps.length() && hero >= 0; i++) hero = move(current, hero, steps.charAt(i));
+        return hero >= 0 && isSolved(current, 0);
+    }
+
+    // 英雄从 hero 走一步 udlrUDLR，大写时推动前方的箱子（写回 boxes）；返回新的英雄格，这一步不合法时返回 -1
+    int move(long[] boxes, int hero, char step) {
+        int dir = new String(Solver.dir).indexOf(Character.toLowerCase(step));
+        int next = dir < 0 ? -1 : next(hero, dir);
+        if (next < 0 || has(boxes, next) != Character.isUpperCase(step)) return -1;
+        if (has(boxes, next)) {
+            int target = next(next, dir);
+            if (target < 0 || has(boxes, target)) return -1;
+            flip(boxes, next);
+            flip(boxes, target);
+        }
+        return next;
+    }
+
+    static boolean has(long[] set, int i) { return (set[i >>> 6] & 1L << i) != 0; }
+    static boolean has(long[] set, int offset, int i) { return (set[offset + (i >>> 6)] & 1L << i) != 0; }
+    static void set(long[] set, int i) { set[i >>> 6] |= 1L << i; }
+    static void flip(long[] set, int i) { set[i >>> 6] ^= 1L << i; }
+}
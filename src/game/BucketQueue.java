@@ -0,0 +1,73 @@
+package game;
+
+import java.util.Arrays;
+
+// 以 f 值为下标的桶式开表：同一 f 值内优先弹出 h 最小的结点，h 也相同时后进先出。f、h 都是小整数，插入和弹出均摊 O(1)
+class BucketQueue {
+    private int[][][] stacks = new int[64][][]; // stacks[f][h] 为结点编号栈
+    private int[][] sizes = new int[64][];
+    private int[] counts = new int[64], minH = new int[64];
+    private int minF = Integer.MAX_VALUE, maxF = -1, size = 0;
+
+    void push(int node, int f, int h) {
+        if (f >= counts.length) growF(f);
+        if (stacks[f] == null) {
+            stacks[f] = new int[Math.max(h + 1, 16)][];
+            sizes[f] = new int[stacks[f].length];
+            minH[f] = Integer.MAX_VALUE;
+        }
+        if (h >= stacks[f].length) {
+            int length = Math.max(h + 1, stacks[f].length * 2);
+            stacks[f] = Arrays.copyOf(stacks[f], length);
+            sizes[f] = Arrays.copyOf(sizes[f], length);
+        }
+
+        int[] stack = stacks[f][h];
+        if (stack == null) {
+            stack = stacks[f][h] = new int[16];
+        } else if (sizes[f][h] == stack.length) {
+            stack = stacks[f][h] = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[sizes[f][h]++] = node;
+
+        counts[f]++;
+        size++;
+        if (h < minH[f]) minH[f] = h;
+        if (f < minF) minF = f;
+        if (f > maxF) maxF = f;
+    }
+
+    // 队列为空时返回 -1
+    int pop() {
+        if (size == 0) return -1;
+        while (counts[minF] == 0) minF++;
+        int f = minF, h = minH[f];
+        while (sizes[f][h] == 0) h++;
+        minH[f] = h;
+
+        counts[f]--;
+        size--;
+        return stacks[f][h][--sizes[f][h]];
+    }
+
+    int size() { return size; }
+    boolean isEmpty() { return size == 0; }
+    int minF() {
+        if (size == 0) return Integer.MAX_VALUE;
+        while (counts[minF] == 0) minF++;
+        return minF;
+    }
+    int maxF() {
+        if (size == 0) return -1;
+        while (counts[maxF] == 0) maxF--;
+        return maxF;
+    }
+
+    private void growF(int f) {
+        int length = Math.max(f + 1, counts.length * 2);
+        stacks = Arrays.copyOf(stacks, length);
+        sizes = Arrays.copyOf(sizes, length);
+        counts = Arrays.copyOf(counts, length);
+        minH = Arrays.copyOf(minH, length);
+    }
+}
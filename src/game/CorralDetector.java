@@ -0,0 +1,178 @@
+package game;
+
+import java.util.Arrays;
+
+// PI-corral 剪枝：corral 是英雄进不去、由墙和箱子围住的区域。若它边界上的箱子只能往里推（I），
+// 且这些推动英雄现在都够得着（P），而区域里还有事要做，那么任何解迟早要先推其中一个，其余推动都不必展开。
+// 顺带用只保留边界箱子的小搜索判断区域是否已成死局：箱子既推不出去也放不满目标即为死局。
+// 死局按（边界箱子，英雄区域）记入按关卡持久化的模式库，之后的求解直接剪掉
+class CorralDetector {
+    private static final int SEARCH_LIMIT = 2000; // 小搜索最多展开的状态数，超出时不下结论
+    private static final long TABLE_BYTES = 1 << 20; // 每张辅助状态表的字节上限，放不下时不缓存、不下结论
+
+    private final Board board;
+    private final DeadlockPatterns patterns;
+    private final StateTable alive = new StateTable(TABLE_BYTES); // 本次求解中小搜索没能证明死局的 corral
+    private final NodeStore store; // 小搜索的结点与闭表，每次小搜索前清空复用
+    private final StateTable seen = new StateTable(TABLE_BYTES);
+    private final FreezeDetector freeze;
+    private final Reachability reach;
+    private final int[] corralOf, queue, moves;
+    private final long[] corral, corralBoxes, boxes;
+    private int pruned = 0, deadlocksFound = 0;
+
+    CorralDetector(Board board) {
+        this.board = board;
+        patterns = DeadlockPatterns.of(board);
+        freeze = new FreezeDetector(board);
+        reach = new Reachability(board);
+        store = new NodeStore(board.words, 0);
+        corralOf = new int[board.cells];
+        queue = new int[board.cells];
+        moves = new int[board.cells * 4];
+        corral = new long[board.words];
+        corralBoxes = new long[board.words];
+        boxes = new long[board.words];
+    }
+
+    int pruned() { return pruned; } // 因 PI-corral 少展开的推动数
+    int deadlocksFound() { return deadlocksFound; }
+
+    // heroReach 为父结点上一次 fill 的结果，pushes[0, count) 为可行的推动（box * 4 + dir）。
+    // 找到 PI-corral 时只保留推进它的推动并返回新的个数，某个 corral 已成死局时返回 0
+    int restrict(long[] nodes, int offset, int hero, Reachability heroReach, int[] pushes, int count) {
+        int corrals = label(nodes, offset, heroReach);
+        int best = -1, bestPushes = Integer.MAX_VALUE;
+        for (int c = 0; c < corrals; c++) {
+            boundary(nodes, offset, c);
+            long key = key(hero);
+            if (patterns.containsCorral(key)) return 0;
+
+            int inward = piPushes(nodes, offset, heroReach, c, pushes, count);
+            if (inward <= 0 || !hasWork(c)) continue;
+            if (alive.get(key) < 0) {
+                if (provenDead(hero)) {
+                    remember(key);
+                    return 0;
+                }
+                alive.put(key, 0);
+            }
+            if (inward < bestPushes) {
+                best = c;
+                bestPushes = inward;
+            }
+        }
+        if (best < 0) return count;
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int target = board.next(pushes[i] / 4, pushes[i] % 4);
+            if (corralOf[target] == best) pushes[kept++] = pushes[i];
+        }
+        pruned += count - kept;
+        return kept;
+    }
+
+    // 把英雄够不着的空地按连通块编号，返回 corral 个数；其余格子记 -1
+    private int label(long[] nodes, int offset, Reachability heroReach) {
+        Arrays.fill(corralOf, -1);
+        int corrals = 0;
+        for (int cell = 0; cell < board.cells; cell++) {
+            if (corralOf[cell] >= 0 || heroReach.reached(cell) || Board.has(nodes, offset, cell)) continue;
+            corralOf[cell] = corrals;
+            queue[0] = cell;
+            for (int head = 0, tail = 1; head < tail; head++) {
+                for (int dir = 0; dir < 4; dir++) {
+                    int next = board.next(queue[head], dir);
+                    if (next < 0 || corralOf[next] >= 0 || Board.has(nodes, offset, next)) continue;
+                    corralOf[next] = corrals;
+                    queue[tail++] = next;
+                }
+            }
+            corrals++;
+        }
+        return corrals;
+    }
+
+    // 区域 c 的格子写入 corral，与它相邻的箱子写入 corralBoxes
+    private void boundary(long[] nodes, int offset, int c) {
+        Arrays.fill(corral, 0);
+        Arrays.fill(corralBoxes, 0);
+        for (int cell = 0; cell < board.cells; cell++) {
+            if (corralOf[cell] != c) continue;
+            Board.set(corral, cell);
+            for (int dir = 0; dir < 4; dir++) {
+                int next = board.next(cell, dir);
+                if (next >= 0 && Board.has(nodes, offset, next)) Board.set(corralBoxes, next);
+            }
+        }
+    }
+
+    // 边界箱子的每个推动都必须推进区域且英雄够得着，否则返回 -1；满足时返回推进区域的可行推动个数
+    private int piPushes(long[] nodes, int offset, Reachability heroReach, int c, int[] pushes, int count) {
+        for (int box = 0; box < board.cells; box++) {
+            if (!Board.has(corralBoxes, box)) continue;
+            for (int dir = 0; dir < 4; dir++) {
+                int behind = board.next(box, (dir + 2) % 4), target = board.next(box, dir);
+                if (behind < 0 || target < 0 || Board.has(nodes, offset, behind)) continue;
+                if (Board.has(nodes, offset, target) || board.isDead(target)) continue;
+                if (corralOf[target] != c || !heroReach.reached(behind)) return -1;
+            }
+        }
+        int inward = 0;
+        for (int i = 0; i < count; i++) if (corralOf[board.next(pushes[i] / 4, pushes[i] % 4)] == c) inward++;
+        return inward;
+    }
+
+    // 区域里有空着的目标，或边界上有不在目标上的箱子
+    private boolean hasWork(int c) {
+        for (int cell = 0; cell < board.cells; cell++) {
+            if (corralOf[cell] == c && board.isGoal(cell)) return true;
+            if (Board.has(corralBoxes, cell) && !board.isGoal(cell)) return true;
+        }
+        return false;
+    }
+
+    // 只保留边界箱子后英雄所在区域决定了小搜索的结果
+    private long key(int hero) {
+        return board.key(corralBoxes, reach.fill(corralBoxes, 0, hero));
+    }
+
+    private void remember(long key) {
+        deadlocksFound++;
+        patterns.addCorral(key);
+    }
+
+    // 在只有边界箱子的地图上广度优先推箱子：有箱子被推出 corral 与边界之外，或箱子全部放上目标，
+    // 区域就还有救；状态穷尽则为死局。少了其余箱子只会让英雄更自由，所以结论可靠
+    private boolean provenDead(int hero) {
+        if (board.isSolved(corralBoxes, 0)) return false;
+        store.clear();
+        seen.clear();
+        int region = reach.fill(corralBoxes, 0, hero);
+        int root = store.add(corralBoxes, board.key(corralBoxes, region), region, -1, (byte) 0, 0, 0);
+        seen.put(store.key(root), root);
+        for (int cur = 0; cur < store.size(); cur++) {
+            if (cur == SEARCH_LIMIT) return false;
+            long[] nodes = store.boxes();
+            int from = store.hero(cur), count = reach.pushes(nodes, store.offset(cur), from, moves);
+
+            for (int i = 0; i < count; i++) {
+                int box = moves[i] / 4, target = board.next(box, moves[i] % 4);
+                if (!Board.has(corral, target) && !Board.has(corralBoxes, target)) return false;
+                store.copyBoxes(cur, boxes);
+                Board.flip(boxes, box);
+                Board.flip(boxes, target);
+                if (board.isSolved(boxes, 0)) return false;
+                if (freeze.isDeadlock(boxes, target)) continue;
+                int newHero = reach.fill(boxes, 0, box);
+                long key = store.key(cur) ^ board.boxKeys[box] ^ board.boxKeys[target]
+                        ^ board.heroKeys[from] ^ board.heroKeys[newHero];
+                if (seen.get(key) >= 0) continue;
+                if (!seen.put(key, store.size())) return false;
+                store.add(boxes, key, newHero, cur, (byte) 0, 0, 0);
+            }
+        }
+        return true;
+    }
+}
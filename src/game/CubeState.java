@@ -1,10 +1,12 @@
 package game;
 
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import com.jme3.app.Application;
@@ -52,6 +54,9 @@ public class CubeState extends BaseAppState {
     private FilterState filterState;
     private int level, rows, cols, heroX, heroY;
     private char[][] map = null;
+    private Board board; // 编译后的关卡，提供死格表
+    private PatternDetector patterns; // 查按关卡积累的死锁模式库，求解器学到的局部死局也能提示出来
+    private Solver solver; // 最近一次求解的求解器，把它后来找到的更短的解接到当前局面上
     private Node rootNode = new Node("Scene Root");
     private SkyControl skyControl;
     private AmbientLight ambientLight; // 环境光
@@ -103,28 +108,22 @@ public class CubeState extends BaseAppState {
     }
 
     private void initCubes() {
-        File mapFile = new File(MAP_FILE_PATH + level + ".txt");
-        try (Scanner sc = new Scanner(mapFile)) {
-            rows = sc.nextInt();
-            cols = sc.nextInt();
-            map = new char[rows][cols];
-            heroX = sc.nextInt();
-            heroY = sc.nextInt();
-            System.out.println("rows: " + rows + ", cols: " + cols + ", heroX: " + heroX + ", heroY: " + heroY);
-            sc.nextLine(); // 读取下一行，跳过行列数之后的换行符
-            for (int i = 0; i < rows; i++) {
-                map[i] = sc.nextLine().toCharArray();
-                if (map[i].length != cols) {
-                    throw new IllegalArgumentException("Invalid map data: row " + (i + 1) + " has " +
-                            map[i].length + " columns (" + map[i] + "), expected " + cols);
-                }
-            }
-            if (sc.hasNext()) sunsetTime = sc.nextFloat();
-            if (sc.hasNext()) throw new IllegalArgumentException("Invalid map data: too many lines");
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        MapFile mapFile;
+        try {
+            mapFile = MapFile.read(Paths.get(MAP_FILE_PATH + level + ".txt"));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid map data: " + e.getMessage(), e);
         }
+        rows = mapFile.rows;
+        cols = mapFile.cols;
+        map = mapFile.map;
+        heroX = mapFile.heroX;
+        heroY = mapFile.heroY;
+        sunsetTime = mapFile.sunsetTime;
+        System.out.println("rows: " + rows + ", cols: " + cols + ", heroX: " + heroX + ", heroY: " + heroY);
         for (int i = 0; i < rows; i++) System.out.println(map[i]);
+        board = new Board(map, rows, cols);
+        patterns = new PatternDetector(board);
 
         for (int x = 0; x < rows; x++) for (int y = 0; y < cols; y++) switch (map[x][y]) {
             case 'B': placeBox(x, y); break;
@@ -427,28 +426,34 @@ public class CubeState extends BaseAppState {
         final int dy[] = {1, 0, -1, 0};
 
         boolean allImmovable = true;
+        long[] boxBits = board.boxes(map);
 
         for (Integer id : boxes.keySet()) {
             int x = hashX(id), y = hashY(id);
-            boolean adjacent = false, adjacentWall = false;
+            if (board.isDead(board.cell(x, y))) {
+                getStateManager().attach(new AlertState(
+                        "Deadlock Detected",
+                        "A box can never reach a goal from here. Press 'U' to undo."
+                ));
+                return true;
+            }
+            if (patterns.isKnownDeadlock(boxBits, board.cell(x, y))) {
+                getStateManager().attach(new AlertState(
+                        "Deadlock Detected",
+                        "These boxes block each other and can never all reach goals. Press 'U' to undo."
+                ));
+                return true;
+            }
+
+            boolean adjacent = false;
             for (int dir = 0; dir < 4; dir++) {
                 int bx = x + dx[dir], by = y + dy[dir];
                 int bbx = x + dx[(dir + 1) % 4], bby = y + dy[(dir + 1) % 4];
                 if ((map[bx][by] == 'B' || map[bx][by] == '#') && (map[bbx][bby] == 'B' || map[bbx][bby] == '#')) {
                     adjacent = true;
-                    if (map[bx][by] == '#' && map[bbx][bby] == '#') {
-                        adjacentWall = true;
-                        break;
-                    }
+                    break;
                 }
             }
-            if (adjacentWall && !goals.contains(id)) {
-                getStateManager().attach(new AlertState(
-                        "Deadlock Detected",
-                        "A box cannot be moved. Press 'U' to undo."
-                ));
-                return true;
-            }
             if (!adjacent) allImmovable = false;
         }
 
@@ -704,11 +709,18 @@ public class CubeState extends BaseAppState {
         return load;
     }
 
-    public void solve(Consumer<String> handler) {
+    // 英雄已按最近一次求解的解走了 played 时，把求解器后来找到的解接到当前局面上，接不上时返回 null
+    public String resume(String played, String improved) {
+        return solver == null ? null : solver.resume(played, improved);
+    }
+
+    // onImproved 在求解器每找到更短的解时调用，handler 在求解结束时以最好的解（或 null）调用，都在主线程中执行。
+    // 取消返回的 future 即停止求解，之后不再调用 handler
+    public CompletableFuture<String> solve(Consumer<String> onImproved, Consumer<String> handler) {
         if (isWin) throw new IllegalStateException("Game is already won.");
         if (checkDeadlock()) {
             handler.accept(null);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         getStateManager().attach(new AlertState(
@@ -723,11 +735,13 @@ public class CubeState extends BaseAppState {
             newMap[x][y] = newMap[x][y] == 'B' ? 'X' : '.';
         }
 
-        // 创建一个新线程来运行 Solver.solve()
-        new Thread(() -> {
-            String solution = Solver.solve(app, rows, cols, heroX, heroY, newMap);
-            app.enqueue(() -> handler.accept(solution)); // 在主线程中更新状态
-        }).start();
+        // 在共享的求解线程池中运行
+        solver = new Solver(app, rows, cols, heroX, heroY, newMap, Paths.get(MAP_FILE_PATH + level + ".txt"));
+        CompletableFuture<String> future = solver.solve(steps -> app.enqueue(() -> onImproved.accept(steps)));
+        future.whenComplete((solution, e) -> {
+            if (!future.isCancelled()) app.enqueue(() -> handler.accept(solution)); // 在主线程中更新状态
+        });
+        return future;
     }
 
     @Override
@@ -792,6 +806,7 @@ public class CubeState extends BaseAppState {
         if (Monkey.isAdded()) Monkey.remove();
 
         getStateManager().detach(filterState);
+        DeadlockPatterns.of(board).save();
     }
 
     @Override
@@ -0,0 +1,97 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// 按关卡积累的死锁模式库：局部布局（被推箱子邻域里的箱子，见 PatternDetector）与 corral（边界箱子加英雄区域，
+// 见 CorralDetector）各一个键集合。同一关卡的所有求解共享一份，内存里按最近使用保留若干关卡，
+// 有新模式时存到 archives/deadlocks_<地图指纹>.bin，下次求解或游戏中的死锁提示直接读回。
+// 小搜索没能证明死局的局部布局也记在这里（只在内存中），同一关卡的各次求解与各线程不必重复搜索
+class DeadlockPatterns {
+    private static final int MAGIC = 0x534B444C, VERSION = 1, HEADER = 24;
+    private static final int CACHE_LEVELS = 16, MAX_PATTERNS = 1 << 16;
+    private static final Map<Long, DeadlockPatterns> LEVELS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, DeadlockPatterns> eldest) { return size() > CACHE_LEVELS; }
+    };
+
+    private final long fingerprint;
+    private final Set<Long> windows = new HashSet<>(), corrals = new HashSet<>(), aliveWindows = new HashSet<>();
+    private int unsaved = 0; // 读入或上次保存之后新增的模式数
+
+    private DeadlockPatterns(long fingerprint) { this.fingerprint = fingerprint; }
+
+    // 关卡的模式库，第一次用到时从磁盘读入
+    static DeadlockPatterns of(Board board) {
+        synchronized (LEVELS) {
+            return LEVELS.computeIfAbsent(board.fingerprint, fingerprint -> {
+                DeadlockPatterns patterns = new DeadlockPatterns(fingerprint);
+                patterns.load();
+                return patterns;
+            });
+        }
+    }
+
+    synchronized boolean containsWindow(long key) { return windows.contains(key); }
+    synchronized boolean containsCorral(long key) { return corrals.contains(key); }
+    synchronized int size() { return windows.size() + corrals.size(); }
+    synchronized boolean isAliveWindow(long key) { return aliveWindows.contains(key); }
+
+    synchronized void addWindow(long key) {
+        if (windows.size() < MAX_PATTERNS && windows.add(key)) unsaved++;
+    }
+
+    synchronized void addAliveWindow(long key) {
+        if (aliveWindows.size() < MAX_PATTERNS) aliveWindows.add(key);
+    }
+
+    synchronized void addCorral(long key) {
+        if (corrals.size() < MAX_PATTERNS && corrals.add(key)) unsaved++;
+    }
+
+    Path path() { return Paths.get("archives", String.format("deadlocks_%016x.bin", fingerprint)); }
+
+    // 有新模式时整体重写文件：先写临时文件再替换，写到一半中断也不会留下损坏的库
+    synchronized void save() {
+        if (unsaved == 0) return;
+        Path path = path(), temp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer out = ByteBuffer.allocate(HEADER + 8 * (windows.size() + corrals.size()));
+        out.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putInt(windows.size()).putInt(corrals.size());
+        for (long key : windows) out.putLong(key);
+        for (long key : corrals) out.putLong(key);
+        try {
+            Files.createDirectories(path.getParent());
+            Files.write(temp, out.array());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Deadlock patterns: " + unsaved + " new, " + size() + " saved to " + path);
+            unsaved = 0;
+        } catch (IOException e) {
+            System.out.println("Failed to save deadlock patterns to " + path + ": " + e.getMessage());
+        }
+    }
+
+    // 文件不存在、不属于这一关或已损坏时从空库开始
+    private void load() {
+        Path path = path();
+        if (!Files.exists(path)) return;
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (in.remaining() < HEADER || in.getInt() != MAGIC || in.getInt() != VERSION) return;
+            if (in.getLong() != fingerprint) return;
+            int windowCount = in.getInt(), corralCount = in.getInt();
+            if (in.remaining() != 8L * (windowCount + corralCount)) return;
+            for (int i = 0; i < windowCount; i++) windows.add(in.getLong());
+            for (int i = 0; i < corralCount; i++) corrals.add(in.getLong());
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable deadlock patterns " + path + ": " + e.getMessage());
+        }
+    }
+}
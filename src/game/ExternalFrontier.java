@@ -0,0 +1,283 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 外存开表：溢出的结点以定长记录攒在写缓冲里，攒满后按 f 排序写成磁盘上的一个归并段。段数到了 MAX_RUNS
+// 就把所有段归并成一段，打开的文件与读缓冲不随溢出量增长。读回时各段按 f 从小到大流式归并，每次最多取出
+// BATCH_RECORDS 个下界最小的记录，批内按键排序后合并重复状态，只留下路径最短的一条。
+// 记录格式：f、键、箱子位图、英雄、父结点、g、h、move、匹配状态
+class ExternalFrontier {
+    private static final int BUFFER_RECORDS = 1 << 14; // 写缓冲的记录数，即新写出的一个归并段的最大长度
+    private static final int READ_RECORDS = 256; // 每个归并段的读缓冲
+    private static final int MAX_RUNS = 16; // 归并的扇入上限
+    private static final int BATCH_RECORDS = 1 << 12; // 每次读回的记录数上限
+
+    private final int words, stride, recordBytes;
+    private final Path directory;
+    private final List<Run> runs = new ArrayList<>();
+    private final ByteBuffer buffer;
+    private int buffered = 0, bufferWeight, bufferMinF = Integer.MAX_VALUE, runCount = 0;
+    private int boundWeight = -1, cachedBound; // 每次出队都要比较下界，内容与权重不变时沿用上次的结果
+    private long spilled = 0, bytesWritten = 0;
+
+    // 读回的一批，按键排好序且已去重：order[i] 为第 i 个不同状态在批数组中的下标
+    private long[] keys = new long[64], boxes;
+    private int[] heroes = new int[64], parents = new int[64], costs = new int[64], estimates = new int[64];
+    private int[] matchings, order = new int[64];
+    private byte[] moves = new byte[64];
+
+    ExternalFrontier(int words, int stride) throws IOException {
+        this.words = words;
+        this.stride = stride;
+        recordBytes = 4 + 8 + words * 8 + 4 * 4 + 1 + stride * 4;
+        directory = Files.createTempDirectory("sokoban-frontier");
+        buffer = ByteBuffer.allocate(BUFFER_RECORDS * recordBytes);
+        boxes = new long[64 * words];
+        matchings = new int[64 * stride];
+    }
+
+    long spilled() { return spilled; }
+    int runs() { return runCount; } // 写出过的段数，含归并产生的段
+    long bytesWritten() { return bytesWritten; }
+    boolean isEmpty() { return buffered == 0 && runs.isEmpty(); }
+
+    // weight 为写入时的启发权重，权重降低后用它换算 f 的下界
+    void add(int f, int weight, long[] boxes, long key, int hero, int parent, byte move, int cost, int estimate,
+             int[] matching) throws IOException {
+        if (buffered == BUFFER_RECORDS || buffered > 0 && weight != bufferWeight) flush();
+        bufferWeight = weight;
+        buffer.putInt(f).putLong(key);
+        for (int i = 0; i < words; i++) buffer.putLong(boxes[i]);
+        buffer.putInt(hero).putInt(parent).putInt(cost).putInt(estimate).put(move);
+        for (int i = 0; i < stride; i++) buffer.putInt(matching[i]);
+        buffered++;
+        bufferMinF = Math.min(bufferMinF, f);
+        spilled++;
+        boundWeight = -1;
+    }
+
+    // 当前权重下外存中所有结点 f 值的下界：f = UNIT * g + w * h 随 w 降低至多按比例缩小
+    int bound(int weight) throws IOException {
+        if (weight == boundWeight) return cachedBound;
+        long bound = buffered == 0 ? Integer.MAX_VALUE : (long) bufferMinF * weight / bufferWeight;
+        for (Run run : runs) bound = Math.min(bound, run.bound(weight));
+        boundWeight = weight;
+        return cachedBound = (int) bound;
+    }
+
+    // 读回下界不超过 bound 的记录，最多 BATCH_RECORDS 个，返回去重后的状态数
+    int load(int weight, int bound) throws IOException {
+        if (buffered > 0) flush();
+        boundWeight = -1;
+        int count = 0;
+        for (int r = runs.size() - 1; r >= 0; r--) {
+            Run run = runs.get(r);
+            while (count < BATCH_RECORDS && run.remaining > 0 && run.bound(weight) <= bound) {
+                if (count == keys.length) growBatch();
+                run.next(count++);
+            }
+            if (run.remaining == 0) {
+                run.channel.close();
+                runs.remove(r);
+            }
+        }
+
+        for (int i = 0; i < count; i++) order[i] = i;
+        sort(0, count - 1);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            int cur = order[i];
+            if (distinct > 0 && keys[order[distinct - 1]] == keys[cur]) {
+                if (costs[cur] < costs[order[distinct - 1]]) order[distinct - 1] = cur;
+            } else {
+                order[distinct++] = cur;
+            }
+        }
+        return distinct;
+    }
+
+    long key(int i) { return keys[order[i]]; }
+    int hero(int i) { return heroes[order[i]]; }
+    int parent(int i) { return parents[order[i]]; }
+    int cost(int i) { return costs[order[i]]; }
+    int estimate(int i) { return estimates[order[i]]; }
+    byte move(int i) { return moves[order[i]]; }
+    long[] boxes() { return boxes; }
+    int offset(int i) { return order[i] * words; }
+    int[] matchings() { return matchings; }
+    int matchingOffset(int i) { return order[i] * stride; }
+
+    // 删除所有归并段文件
+    void close() {
+        try {
+            for (Run run : runs) run.channel.close();
+            runs.clear();
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.out.println("Failed to remove " + directory + ": " + e.getMessage());
+        }
+    }
+
+    // 写缓冲按 f 排序（f 相同时保持写入顺序）后整段写出
+    private void flush() throws IOException {
+        long[] sorted = new long[buffered];
+        for (int i = 0; i < buffered; i++) sorted[i] = (long) buffer.getInt(i * recordBytes) << 32 | i;
+        Arrays.sort(sorted);
+        ByteBuffer out = ByteBuffer.allocate(buffered * recordBytes);
+        for (long entry : sorted) {
+            int i = (int) entry;
+            out.put(buffer.array(), i * recordBytes, recordBytes);
+        }
+        out.flip();
+
+        FileChannel channel = createRun();
+        while (out.hasRemaining()) channel.write(out);
+        channel.position(0);
+        runs.add(new Run(channel, bufferWeight, buffered));
+        bytesWritten += (long) buffered * recordBytes;
+
+        buffer.clear();
+        buffered = 0;
+        bufferMinF = Integer.MAX_VALUE;
+        if (runs.size() >= MAX_RUNS) merge();
+    }
+
+    // 把所有段按 f 归并成一段。各段写入时的权重可能不同，归并后的 f 统一换算到最新一段的权重，
+    // 换算向下取整，仍是记录真实 f 的下界
+    private void merge() throws IOException {
+        int weight = runs.get(runs.size() - 1).weight;
+        long total = 0;
+        for (Run run : runs) total += run.remaining;
+        FileChannel channel = createRun();
+        ByteBuffer out = ByteBuffer.allocate(READ_RECORDS * recordBytes);
+        while (true) {
+            Run min = null;
+            long minF = Long.MAX_VALUE;
+            for (Run run : runs) {
+                if (run.remaining == 0) continue;
+                long f = run.bound(weight);
+                if (f < minF) {
+                    min = run;
+                    minF = f;
+                }
+            }
+            if (min == null || !out.hasRemaining()) {
+                out.flip();
+                while (out.hasRemaining()) channel.write(out);
+                out.clear();
+                if (min == null) break;
+            }
+            min.copy(out, (int) minF);
+        }
+        for (Run run : runs) run.channel.close();
+        runs.clear();
+        channel.position(0);
+        runs.add(new Run(channel, weight, total));
+        bytesWritten += total * recordBytes;
+    }
+
+    private FileChannel createRun() throws IOException {
+        Path path = directory.resolve("run-" + runCount++ + ".bin");
+        return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    private void growBatch() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        boxes = Arrays.copyOf(boxes, capacity * words);
+        heroes = Arrays.copyOf(heroes, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        estimates = Arrays.copyOf(estimates, capacity);
+        moves = Arrays.copyOf(moves, capacity);
+        matchings = Arrays.copyOf(matchings, capacity * stride);
+        order = Arrays.copyOf(order, capacity);
+    }
+
+    // order[lo, hi] 按键快速排序，键相同的记录排在一起
+    private void sort(int lo, int hi) {
+        while (lo < hi) {
+            long pivot = keys[order[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) i++;
+                while (keys[order[j]] > pivot) j--;
+                if (i <= j) {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            // 先递归较短的一侧，栈深不超过 log n
+            if (j - lo < hi - i) {
+                sort(lo, j);
+                lo = i;
+            } else {
+                sort(i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    // 一个已排序的归并段，顺序读到批数组里
+    private final class Run {
+        final FileChannel channel;
+        final int weight;
+        long remaining;
+        final ByteBuffer in;
+
+        Run(FileChannel channel, int weight, long remaining) {
+            this.channel = channel;
+            this.weight = weight;
+            this.remaining = remaining;
+            in = ByteBuffer.allocate(READ_RECORDS * recordBytes);
+            in.limit(0);
+        }
+
+        long bound(int current) throws IOException {
+            if (!in.hasRemaining()) fill();
+            return (long) in.getInt(in.position()) * current / weight;
+        }
+
+        void next(int slot) throws IOException {
+            if (!in.hasRemaining()) fill();
+            in.getInt();
+            keys[slot] = in.getLong();
+            for (int i = 0; i < words; i++) boxes[slot * words + i] = in.getLong();
+            heroes[slot] = in.getInt();
+            parents[slot] = in.getInt();
+            costs[slot] = in.getInt();
+            estimates[slot] = in.getInt();
+            moves[slot] = in.get();
+            for (int i = 0; i < stride; i++) matchings[slot * stride + i] = in.getInt();
+            remaining--;
+        }
+
+        // 把当前记录写到 out，其中的 f 换成归并后的值
+        void copy(ByteBuffer out, int f) throws IOException {
+            if (!in.hasRemaining()) fill();
+            out.putInt(f);
+            out.put(in.array(), in.position() + 4, recordBytes - 4);
+            in.position(in.position() + recordBytes);
+            remaining--;
+        }
+
+        private void fill() throws IOException {
+            in.clear();
+            in.limit((int) Math.min(in.capacity(), remaining * recordBytes));
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) throw new IOException("Frontier run truncated");
+            }
+            in.flip();
+        }
+    }
+}
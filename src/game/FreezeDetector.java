@@ -0,0 +1,39 @@
+package game;
+
+// 冻结死锁检测：箱子在水平、竖直方向都动不了即为冻结；冻结的箱子群中只要有一个不在目标上就是死局
+class FreezeDetector {
+    private static final int NOT_FROZEN = 0, FROZEN = 1, FROZEN_OFF_GOAL = 2;
+
+    private final Board board;
+    private final boolean[] onPath;
+
+    FreezeDetector(Board board) {
+        this.board = board;
+        onPath = new boolean[board.cells];
+    }
+
+    // 只检查刚被推到 box 的箱子及与它相连的箱子
+    boolean isDeadlock(long[] boxes, int box) { return frozen(boxes, box) == FROZEN_OFF_GOAL; }
+
+    private int frozen(long[] boxes, int box) {
+        onPath[box] = true; // 递归检查相邻箱子时把路径上的箱子视为墙，避免循环
+        int horizontal = blocked(boxes, box, 0), result = NOT_FROZEN;
+        if (horizontal != NOT_FROZEN) {
+            int vertical = blocked(boxes, box, 1);
+            if (vertical != NOT_FROZEN) result = Math.max(board.isGoal(box) ? FROZEN : FROZEN_OFF_GOAL,
+                    Math.max(horizontal, vertical));
+        }
+        onPath[box] = false;
+        return result;
+    }
+
+    // axis 为 0 时检查左右，为 1 时检查上下；被冻结的相邻箱子把它自己的结果传上来
+    private int blocked(long[] boxes, int box, int axis) {
+        int a = board.next(box, axis), b = board.next(box, axis + 2);
+        if (a < 0 || b < 0 || onPath[a] || onPath[b]) return FROZEN;
+        if (board.isDead(a) && board.isDead(b)) return FROZEN;
+        int result = Board.has(boxes, a) ? frozen(boxes, a) : NOT_FROZEN;
+        if (result == NOT_FROZEN && Board.has(boxes, b)) result = frozen(boxes, b);
+        return result;
+    }
+}
@@ -2,6 +2,7 @@ package game;
 
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 
 import com.jme3.app.Application;
 import com.jme3.app.SimpleApplication;
@@ -28,6 +29,9 @@ public class GameState extends BaseAppState {
     private boolean isMenuOpen = false, isHelping = false, isSolving = false, isSolverWorking = false;
     private Queue<String> instructions = new LinkedList<>();
     private Queue<Character> solution = new LinkedList<>();
+    private boolean acceptImprovements = false; // 演示停止后不再接受求解器找到的更短的解
+    private final StringBuilder played = new StringBuilder(); // 本次求解后已按解走出的步子
+    private CompletableFuture<String> solver; // 正在进行的求解，停止演示或离开关卡时一并取消
     private Picture menu, fd, bk, l, r, Q, E, space;
     private Node guiNode;
 
@@ -140,21 +144,34 @@ public class GameState extends BaseAppState {
         isSolverWorking = true;
         if (cubeState.isFlying()) cubeState.reverseFly();
 
-        cubeState.solve(steps -> {
-            isSolverWorking = false;
+        acceptImprovements = true;
+        played.setLength(0);
+        solver = cubeState.solve(steps -> {
+            if (!acceptImprovements) return;
+            String rest = cubeState.resume(played.toString(), steps); // 已经走了几步时，新解要经过当前局面才能换上
+            if (rest == null) return;
             isSolving = true;
+            solution.clear();
+            for (char step : rest.toCharArray()) solution.add(step);
+        }, steps -> {
+            isSolverWorking = false;
 
             if (steps == null) {
                 System.out.println("No solution found");
                 stopSolving();
             } else {
                 System.out.println("Solution: " + steps);
-                for (char step : steps.toCharArray()) solution.add(step);
             }
         });
     }
     public void stopSolving() {
         isSolving = false;
+        acceptImprovements = false;
+        if (solver != null) {
+            solver.cancel(false); // 已完成时无效果
+            solver = null;
+            isSolverWorking = false;
+        }
         solution.clear();
 
         System.out.println("Solving stopped");
@@ -293,7 +310,7 @@ public class GameState extends BaseAppState {
                     cubeState.moveHero(c);
                 }
                 if (isMenuOpen) menuState.updateSteps();
-                solution.poll();
+                played.append(solution.poll());
             }
         }
 
@@ -306,6 +323,7 @@ public class GameState extends BaseAppState {
 
     @Override
     public void onDisable() {
+        if (solver != null) solver.cancel(false); // 离开关卡后不再让过期的求解占用 CPU
         getStateManager().detach(cubeState);
         menu.removeFromParent();
         fd.removeFromParent();
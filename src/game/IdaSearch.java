@@ -0,0 +1,237 @@
+package game;
+
+import java.util.Arrays;
+
+// 内存受限的 IDA*（推箱模式）：深度优先地逐轮放宽 f 阈值，内存只有递归栈和一张固定大小的置换表。
+// 置换表剪掉本轮以不大于当前 g 的代价到过的状态，并跨轮次记住子树搜索后学到的更大下界。
+// 近似模式下以位状态哈希代替置换表：每轮清空后只记本轮到过的状态，内存只有当前路径和位数组，
+// 先到的路径不一定最短、冲突的状态也会被剪掉，所以既不保证最优也不保证完备
+class IdaSearch {
+    private static final int FOUND = -3;
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private final Board board;
+    private final long[] startBoxes;
+    private final int startHero;
+    private final Reachability reach;
+    private final Matching matching;
+    private final FreezeDetector freeze;
+    private final TranspositionTable table;
+    private final BitstateTable bitstate;
+    private final long[] scratch;
+    private final int[] scratchMatching;
+
+    // 第 depth 层的状态：箱子、归一化的英雄、键、启发值、匹配状态，以及排好序的候选推动
+    private long[][] boxesAt = new long[0][];
+    private int[][] matchingAt = new int[0][], pushesAt = new int[0][], heroesAt = new int[0][], estimatesAt = new int[0][];
+    private long[][] keysAt = new long[0][];
+    private int[] pathPush = new int[0];
+    private int threshold, next, iteration = 0, solutionDepth = -1, expanded = 0;
+    private long deadline;
+    private boolean timedOut;
+    private volatile boolean cancelled = false;
+
+    IdaSearch(Board board, long[] startBoxes, int startHero, long memoryBytes) {
+        this(board, startBoxes, startHero, new TranspositionTable(memoryBytes), null);
+    }
+
+    IdaSearch(Board board, long[] startBoxes, int startHero, BitstateTable bitstate) {
+        this(board, startBoxes, startHero, null, bitstate);
+    }
+
+    private IdaSearch(Board board, long[] startBoxes, int startHero, TranspositionTable table, BitstateTable bitstate) {
+        this.board = board;
+        this.startBoxes = startBoxes;
+        this.startHero = startHero;
+        reach = new Reachability(board);
+        matching = new Matching(board);
+        freeze = new FreezeDetector(board);
+        this.table = table;
+        this.bitstate = bitstate;
+        scratch = new long[board.words];
+        scratchMatching = new int[matching.stride()];
+    }
+
+    int expanded() { return expanded; }
+    TranspositionTable table() { return table; }
+    void cancel() { cancelled = true; }
+
+    // 返回解的推动次数，或 Search.NOT_FOUND / Search.TIME_OUT / Search.CANCELLED
+    int run(long deadline) {
+        this.deadline = deadline;
+        ensureDepth(0);
+        System.arraycopy(startBoxes, 0, boxesAt[0], 0, board.words);
+        int hero = reach.fill(startBoxes, 0, startHero);
+        int estimate = matching.solve(startBoxes, 0, matchingAt[0], 0);
+        if (estimate == Matching.INFINITE) return Search.NOT_FOUND;
+        if (board.isSolved(startBoxes, 0)) return 0;
+
+        threshold = estimate;
+        while (true) {
+            iteration++;
+            next = INFINITE;
+            timedOut = false;
+            if (bitstate != null) bitstate.clear();
+            int result = dfs(0, hero, board.key(startBoxes, hero), estimate);
+            if (timedOut) return cancelled ? Search.CANCELLED : Search.TIME_OUT;
+            if (result == FOUND) return solutionDepth;
+            if (next == INFINITE) return Search.NOT_FOUND;
+            threshold = next;
+        }
+    }
+
+    // 返回子树的最小 f 下界（用于学习启发值）；找到解或超时时返回 FOUND
+    private int dfs(int depth, int hero, long key, int estimate) {
+        int g = depth;
+        if (bitstate != null) return approximate(depth, hero, key, estimate);
+        int slot = table.probe(key);
+        if (slot >= 0) {
+            int bound = table.bound(slot);
+            if (bound == TranspositionTable.DEAD) return INFINITE;
+            estimate = Math.max(estimate, bound);
+            // 本轮已以不大于 g 的代价到过（或正在路径上），它的贡献已经计入
+            if (table.iteration(slot) == iteration && table.g(slot) <= g) return g + estimate;
+        }
+        if (g + estimate > threshold) {
+            next = Math.min(next, g + estimate);
+            return g + estimate;
+        }
+        if ((++expanded & 1023) == 0 && (cancelled || System.currentTimeMillis() > deadline)) {
+            timedOut = true;
+            return FOUND;
+        }
+        table.store(key, iteration, threshold - g, g, estimate); // 先占位，路径上的环会在上面被剪掉
+
+        int count = generate(depth, hero, key), min = INFINITE;
+        long[] boxes = boxesAt[depth], child = boxesAt[depth + 1];
+        for (int i = 0; i < count; i++) {
+            int push = pushesAt[depth][i], box = push / 4, target = board.next(box, push % 4);
+            System.arraycopy(boxes, 0, child, 0, board.words);
+            Board.flip(child, box);
+            Board.flip(child, target);
+            matching.repair(matchingAt[depth], 0, box, target, matchingAt[depth + 1], 0);
+            pathPush[depth] = push;
+            if (board.isSolved(child, 0)) {
+                solutionDepth = depth + 1;
+                return FOUND;
+            }
+
+            int result = dfs(depth + 1, heroesAt[depth][i], keysAt[depth][i], estimatesAt[depth][i]);
+            if (result == FOUND) return FOUND;
+            min = Math.min(min, result);
+        }
+
+        // 子树搜完没有解：最小 f 减去 g 是该状态剩余代价的下界，留给以后的轮次
+        int learned = min == INFINITE ? TranspositionTable.DEAD : Math.max(estimate, min - g);
+        table.store(key, iteration, threshold - g, g, learned);
+        return min == INFINITE ? INFINITE : g + learned;
+    }
+
+    // 近似模式的 dfs：本轮位数组里已有的状态直接剪掉，不学习下界
+    private int approximate(int depth, int hero, long key, int estimate) {
+        int g = depth;
+        if (g + estimate > threshold) {
+            next = Math.min(next, g + estimate);
+            return g + estimate;
+        }
+        if (!bitstate.add(key)) return INFINITE; // 可能只是哈希冲突，这正是近似模式的代价
+        if ((++expanded & 1023) == 0 && (cancelled || System.currentTimeMillis() > deadline)) {
+            timedOut = true;
+            return FOUND;
+        }
+
+        int count = generate(depth, hero, key), min = INFINITE;
+        long[] boxes = boxesAt[depth], child = boxesAt[depth + 1];
+        for (int i = 0; i < count; i++) {
+            int push = pushesAt[depth][i], box = push / 4, target = board.next(box, push % 4);
+            System.arraycopy(boxes, 0, child, 0, board.words);
+            Board.flip(child, box);
+            Board.flip(child, target);
+            matching.repair(matchingAt[depth], 0, box, target, matchingAt[depth + 1], 0);
+            pathPush[depth] = push;
+            if (board.isSolved(child, 0)) {
+                solutionDepth = depth + 1;
+                return FOUND;
+            }
+
+            int result = approximate(depth + 1, heroesAt[depth][i], keysAt[depth][i], estimatesAt[depth][i]);
+            if (result == FOUND) return FOUND;
+            min = Math.min(min, result);
+        }
+        return min;
+    }
+
+    // 收集第 depth 层所有不会立即死锁的推动，按子结点启发值从小到大排序，返回个数
+    private int generate(int depth, int hero, long key) {
+        ensureDepth(depth + 1);
+        long[] boxes = boxesAt[depth];
+        int[] pushes = pushesAt[depth];
+        int count = reach.pushes(boxes, 0, hero, pushes);
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int push = pushes[i], box = push / 4, target = board.next(box, push % 4);
+            System.arraycopy(boxes, 0, scratch, 0, board.words);
+            Board.flip(scratch, box);
+            Board.flip(scratch, target);
+            if (freeze.isDeadlock(scratch, target)) continue;
+            int estimate = matching.repair(matchingAt[depth], 0, box, target, scratchMatching, 0);
+            if (estimate == Matching.INFINITE) continue;
+            int newHero = reach.fill(scratch, 0, box);
+
+            // 插入排序，候选推动很少
+            int j = kept++;
+            for (; j > 0 && estimatesAt[depth][j - 1] > estimate; j--) {
+                pushes[j] = pushes[j - 1];
+                heroesAt[depth][j] = heroesAt[depth][j - 1];
+                keysAt[depth][j] = keysAt[depth][j - 1];
+                estimatesAt[depth][j] = estimatesAt[depth][j - 1];
+            }
+            pushes[j] = push;
+            heroesAt[depth][j] = newHero;
+            keysAt[depth][j] = key ^ board.boxKeys[box] ^ board.boxKeys[target]
+                    ^ board.heroKeys[hero] ^ board.heroKeys[newHero];
+            estimatesAt[depth][j] = estimate;
+        }
+        return kept;
+    }
+
+    private void ensureDepth(int depth) {
+        if (depth < boxesAt.length) return;
+        int length = Math.max(depth + 1, boxesAt.length * 2);
+        int from = boxesAt.length;
+        boxesAt = Arrays.copyOf(boxesAt, length);
+        matchingAt = Arrays.copyOf(matchingAt, length);
+        pushesAt = Arrays.copyOf(pushesAt, length);
+        heroesAt = Arrays.copyOf(heroesAt, length);
+        estimatesAt = Arrays.copyOf(estimatesAt, length);
+        keysAt = Arrays.copyOf(keysAt, length);
+        pathPush = Arrays.copyOf(pathPush, length);
+        int candidates = board.goalCells.length * 4; // 每个箱子最多四个方向
+        for (int i = from; i < length; i++) {
+            boxesAt[i] = new long[board.words];
+            matchingAt[i] = new int[matching.stride()];
+            pushesAt[i] = new int[candidates];
+            heroesAt[i] = new int[candidates];
+            estimatesAt[i] = new int[candidates];
+            keysAt[i] = new long[candidates];
+        }
+    }
+
+    // 按记录的推动序列从初始状态重放，拼出完整的 udlrUDLR 串
+    String steps() {
+        long[] boxes = startBoxes.clone();
+        StringBuilder steps = new StringBuilder();
+        int hero = startHero;
+        for (int i = 0; i < solutionDepth; i++) {
+            int box = pathPush[i] / 4, dir = pathPush[i] % 4, target = board.next(box, dir);
+            reach.fill(boxes, 0, hero);
+            reach.path(board.next(box, (dir + 2) % 4), steps);
+            steps.append(Character.toUpperCase(Solver.dir[dir]));
+            Board.flip(boxes, box);
+            Board.flip(boxes, target);
+            hero = box;
+        }
+        return steps.toString();
+    }
+}
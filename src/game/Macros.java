@@ -0,0 +1,251 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 宏推动，一次状态转移包含多次推动：
+// 隧道宏：箱子被推进一格宽的隧道（英雄与箱子两侧都是墙）时一路推到隧道尽头、目标或障碍前；
+// 目标房间宏：只有一个入口的目标房间，预先用反向“拉”出所有箱子的方法算出装箱顺序和每个箱子的路线，
+// 箱子从外面推到入口、且这一推正朝着路线进房间的方向时，若房间里恰好是装箱顺序的前若干个箱子，就沿路线
+// 直接送到下一个目标。箱子未必该在此时装进房间，所以搜索在房间宏之外还要保留单步推动（见 packed）。
+// 结果以直线段表示，segments[j] = 段终点 * 4 + 方向
+class Macros {
+    private static final int ROOM_SIZE_PER_GOAL = 3; // 房间格数不超过目标数的这么多倍，避免把半张地图当成房间
+
+    private final Board board;
+    private final Reachability reach;
+    private final int[] roomOf; // 房间内的格子所属房间编号，其余为 -1
+    private final List<Room> rooms = new ArrayList<>();
+    private final long[] scratch;
+    private int pushes = 0;
+    private boolean packed = false;
+
+    // 一个目标房间：order[k] 为第 k 个装入的目标，paths[k] 为箱子从入口到 order[k] 经过的格子
+    private static final class Room {
+        final int entrance;
+        final int[] order;
+        final int[][] paths;
+
+        Room(int entrance, int[] order, int[][] paths) {
+            this.entrance = entrance;
+            this.order = order;
+            this.paths = paths;
+        }
+    }
+
+    Macros(Board board) {
+        this.board = board;
+        reach = new Reachability(board);
+        roomOf = new int[board.cells];
+        Arrays.fill(roomOf, -1);
+        scratch = new long[board.words];
+        findRooms();
+    }
+
+    int rooms() { return rooms.size(); }
+    int pushes() { return pushes; } // 最近一次 expand 的推动总数
+    boolean packed() { return packed; } // 最近一次 expand 是否用了目标房间宏
+
+    // boxes 为父结点的箱子，箱子从 box 沿 dir 推一格；把宏推动后的箱子写回 boxes，返回段数
+    int expand(long[] boxes, int box, int dir, int[] segments) {
+        int target = board.next(box, dir);
+        Board.flip(boxes, box);
+        Board.flip(boxes, target);
+        pushes = 1;
+        packed = false;
+        segments[0] = target * 4 + dir;
+
+        int room = roomOf(target, box, boxes);
+        if (room >= 0) {
+            int count = pack(rooms.get(room), boxes, box, dir, segments);
+            if (count > 0) {
+                packed = true;
+                return count;
+            }
+        }
+
+        // 隧道：英雄在 hero，箱子在 cur，两处的两侧都是墙
+        int hero = box, cur = target, left = (dir + 1) % 4, right = (dir + 3) % 4;
+        while (!board.isGoal(cur) && board.next(hero, left) < 0 && board.next(hero, right) < 0
+                && board.next(cur, left) < 0 && board.next(cur, right) < 0) {
+            int next = board.next(cur, dir);
+            if (next < 0 || Board.has(boxes, next) || board.isDead(next)) break;
+            Board.flip(boxes, cur);
+            Board.flip(boxes, next);
+            hero = cur;
+            cur = next;
+            pushes++;
+        }
+        segments[0] = cur * 4 + dir;
+        return 1;
+    }
+
+    // 箱子从房间外推到入口，房间里恰好是装箱顺序的前 k 个箱子时返回房间编号
+    private int roomOf(int target, int box, long[] boxes) {
+        for (int r = 0; r < rooms.size(); r++) {
+            Room room = rooms.get(r);
+            if (room.entrance != target || roomOf[box] == r) continue;
+            int k = 0;
+            for (int cell = 0; cell < board.cells; cell++) if (roomOf[cell] == r && Board.has(boxes, cell)) k++;
+            if (k == room.order.length) return -1;
+            for (int i = 0; i < k; i++) if (!Board.has(boxes, room.order[i])) return -1;
+            return r;
+        }
+        return -1;
+    }
+
+    // 沿路线把入口的箱子推到下一个目标，这一推不是朝路线进房间的方向或英雄够不着某一步时返回 0，boxes 保持不变
+    private int pack(Room room, long[] boxes, int hero, int dir, int[] segments) {
+        int k = 0;
+        for (int goal : room.order) if (Board.has(boxes, goal)) k++;
+        int[] path = room.paths[k];
+        if (direction(path[0], path[1]) != dir) return 0;
+        System.arraycopy(boxes, 0, scratch, 0, board.words);
+        int count = 1, total = 1, last = dir;
+        for (int i = 0; i + 1 < path.length; i++) {
+            int from = path[i], to = path[i + 1], step = direction(from, to);
+            int behind = board.next(from, (step + 2) % 4);
+            if (hero != behind) {
+                reach.fill(scratch, 0, hero);
+                if (!reach.reached(behind)) return 0;
+            }
+            Board.flip(scratch, from);
+            Board.flip(scratch, to);
+            hero = from;
+            total++;
+            if (step == last) {
+                segments[count - 1] = to * 4 + step;
+            } else {
+                segments[count++] = to * 4 + step;
+            }
+            last = step;
+        }
+        System.arraycopy(scratch, 0, boxes, 0, board.words);
+        pushes = total;
+        return count;
+    }
+
+    private int direction(int from, int to) {
+        for (int dir = 0; dir < 4; dir++) if (board.next(from, dir) == to) return dir;
+        throw new IllegalStateException("Cells " + from + " and " + to + " are not adjacent");
+    }
+
+    // 去掉某个非目标格后分出去的连通块若含目标、且足够小，就是以该格为入口的房间；
+    // 较小的房间优先，格子不重叠
+    private void findRooms() {
+        List<int[]> candidates = new ArrayList<>(); // {入口, 房间格数, 起始格}
+        int[] queue = new int[board.cells], mark = new int[board.cells];
+        int stamp = 0;
+        for (int entrance = 0; entrance < board.cells; entrance++) {
+            if (board.isGoal(entrance)) continue;
+            int first = stamp + 1;
+            for (int dir = 0; dir < 4; dir++) {
+                int start = board.next(entrance, dir);
+                if (start < 0 || mark[start] >= first) continue; // 与前一个方向连通，是同一块
+                stamp++;
+                mark[entrance] = stamp;
+                mark[start] = stamp;
+                queue[0] = start;
+                int tail = 1, goals = 0;
+                for (int head = 0; head < tail; head++) {
+                    if (board.isGoal(queue[head])) goals++;
+                    for (int d = 0; d < 4; d++) {
+                        int next = board.next(queue[head], d);
+                        if (next < 0 || mark[next] == stamp) continue;
+                        mark[next] = stamp;
+                        queue[tail++] = next;
+                    }
+                }
+                if (goals > 0 && tail <= goals * ROOM_SIZE_PER_GOAL && tail < board.cells - 1) {
+                    candidates.add(new int[] {entrance, tail, start});
+                }
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(a[1], b[1]));
+
+        for (int[] candidate : candidates) {
+            long[] cells = new long[board.words];
+            int entrance = candidate[0];
+            boolean overlaps = false;
+            queue[0] = candidate[2];
+            Board.set(cells, candidate[2]);
+            for (int head = 0, tail = 1; head < tail; head++) {
+                overlaps |= roomOf[queue[head]] >= 0;
+                for (int d = 0; d < 4; d++) {
+                    int next = board.next(queue[head], d);
+                    if (next < 0 || next == entrance || Board.has(cells, next)) continue;
+                    Board.set(cells, next);
+                    queue[tail++] = next;
+                }
+            }
+            if (overlaps || roomOf[entrance] >= 0) continue;
+            Room room = packingOrder(entrance, cells);
+            if (room == null) continue;
+            for (int cell = 0; cell < board.cells; cell++) if (Board.has(cells, cell)) roomOf[cell] = rooms.size();
+            rooms.add(room);
+        }
+    }
+
+    // 从装满的房间开始，每次找一个能单独拉到入口的箱子拉出去；拉出的顺序反过来就是装箱顺序。
+    // 某一步一个都拉不出来时返回 null
+    private Room packingOrder(int entrance, long[] cells) {
+        long[] boxes = new long[board.words];
+        int goals = 0;
+        for (int cell = 0; cell < board.cells; cell++) {
+            if (Board.has(cells, cell) && board.isGoal(cell)) {
+                Board.set(boxes, cell);
+                goals++;
+            }
+        }
+        int[] order = new int[goals];
+        int[][] paths = new int[goals][];
+        for (int k = goals - 1; k >= 0; k--) {
+            int[] path = null;
+            for (int cell = 0; cell < board.cells && path == null; cell++) {
+                if (Board.has(boxes, cell)) path = pullOut(boxes, cell, entrance);
+            }
+            if (path == null) return null;
+            order[k] = path[path.length - 1];
+            paths[k] = path;
+            Board.flip(boxes, order[k]);
+        }
+        return new Room(entrance, order, paths);
+    }
+
+    // 其余箱子不动，英雄从入口出发，把 box 处的箱子拉到入口：广度优先搜索（箱子格，英雄区域），
+    // 返回箱子从入口到 box 的格子序列，拉不出来返回 null
+    private int[] pullOut(long[] boxes, int box, int entrance) {
+        List<int[]> states = new ArrayList<>(); // {箱子格, 英雄区域代表格, 父状态}
+        states.add(new int[] {box, reach.fill(boxes, 0, entrance), -1});
+        boolean[] seen = new boolean[board.cells * board.cells];
+        Board.flip(boxes, box);
+        int[] path = null;
+        for (int i = 0; i < states.size() && path == null; i++) {
+            int cur = states.get(i)[0], hero = states.get(i)[1];
+            if (cur == entrance) {
+                int length = 0;
+                for (int s = i; s >= 0; s = states.get(s)[2]) length++;
+                path = new int[length];
+                for (int s = i, j = 0; s >= 0; s = states.get(s)[2]) path[j++] = states.get(s)[0];
+                break;
+            }
+            // 英雄站在箱子旁的 from，再往外一格 to 也空着，英雄退到 to，箱子跟到 from
+            for (int dir = 0; dir < 4; dir++) {
+                Board.flip(boxes, cur);
+                reach.fill(boxes, 0, hero);
+                Board.flip(boxes, cur);
+                int from = board.next(cur, dir), to = from < 0 ? -1 : board.next(from, dir);
+                if (to < 0 || !reach.reached(from) || !reach.reached(to)) continue;
+                Board.flip(boxes, from);
+                int next = reach.fill(boxes, 0, to);
+                Board.flip(boxes, from);
+                if (seen[from * board.cells + next]) continue;
+                seen[from * board.cells + next] = true;
+                states.add(new int[] {from, next, i});
+            }
+        }
+        Board.flip(boxes, box);
+        return path;
+    }
+}
@@ -0,0 +1,44 @@
+package game;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+// 关卡地图文件：行数、列数、英雄坐标，随后是地图各行，最后可选日落时间（秒）。
+// 游戏、求解器的预先求解与缓存查找、基准测试都用它读地图，每次读到的都是新的数组
+class MapFile {
+    private static final float DEFAULT_SUNSET_TIME = 60f;
+
+    final int rows, cols, heroX, heroY;
+    final char[][] map;
+    final float sunsetTime;
+
+    private MapFile(int rows, int cols, int heroX, int heroY, char[][] map, float sunsetTime) {
+        this.rows = rows;
+        this.cols = cols;
+        this.heroX = heroX;
+        this.heroY = heroY;
+        this.map = map;
+        this.sunsetTime = sunsetTime;
+    }
+
+    static MapFile read(Path path) throws IOException {
+        try (Scanner sc = new Scanner(path.toFile())) {
+            int rows = sc.nextInt(), cols = sc.nextInt(), heroX = sc.nextInt(), heroY = sc.nextInt();
+            sc.nextLine(); // 跳过行列数之后的换行符
+            char[][] map = new char[rows][];
+            for (int i = 0; i < rows; i++) {
+                map[i] = sc.nextLine().toCharArray();
+                if (map[i].length != cols) {
+                    throw new IOException("Invalid map file " + path + ": row " + (i + 1) + " has " + map[i].length
+                            + " columns, expected " + cols);
+                }
+            }
+            float sunsetTime = sc.hasNext() ? sc.nextFloat() : DEFAULT_SUNSET_TIME;
+            if (sc.hasNext()) throw new IOException("Invalid map file " + path + ": too many lines");
+            return new MapFile(rows, cols, heroX, heroY, map, sunsetTime);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid map file " + path + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package game;
+
+import java.util.Arrays;
+
+// 箱子与目标之间按推动距离的最小费用完美匹配（匈牙利算法），是剩余推动次数的下界。
+// 匹配状态用 2n 个整数保存：前 n 个为每个目标匹配到的箱子格，后 n 个为目标一侧的对偶势。
+// 距离表可以换掉，双向搜索的反向一侧用它估计把箱子拉回初始位置的次数
+class Matching {
+    static final int INFINITE = Integer.MAX_VALUE; // 不存在有限费用的匹配，即死局
+    private static final int UNSET = Integer.MAX_VALUE / 2;
+
+    private final Board board;
+    private final int n;
+    private final int[] distances; // distances[目标 * cells + 格子]
+    private final int[] rowCell, u, v, p, way, minv;
+    private final boolean[] used;
+
+    Matching(Board board) { this(board, board.goalCells.length, board.pushDistances()); }
+
+    Matching(Board board, int targets, int[] distances) {
+        this.board = board;
+        this.distances = distances;
+        n = targets;
+        rowCell = new int[n + 1];
+        u = new int[n + 1];
+        v = new int[n + 1];
+        p = new int[n + 1];
+        way = new int[n + 1];
+        minv = new int[n + 1];
+        used = new boolean[n + 1];
+    }
+
+    int stride() { return 2 * n; }
+
+    int cost(long[] boxes, int offset) { return solve(boxes, offset, null, 0); }
+
+    // 从头求解；state 不为 null 时把匹配状态写入 state[stateOffset, stateOffset + 2n)
+    int solve(long[] boxes, int offset, int[] state, int stateOffset) {
+        for (int cell = 0, i = 1; i <= n; cell++) if (Board.has(boxes, offset, cell)) rowCell[i++] = cell;
+        Arrays.fill(u, 0);
+        Arrays.fill(v, 0);
+        Arrays.fill(p, 0);
+        for (int i = 1; i <= n; i++) augment(i);
+        return save(state, stateOffset);
+    }
+
+    // 只有 from 处的箱子被推到 to：在父结点的匹配上修复这一行。若它原来的目标仍是约化费用最小的列，
+    // 匹配保持最优，只需 O(n)；否则释放该目标，从这一行做一次增广，O(n^2)
+    int repair(int[] parent, int parentOffset, int from, int to, int[] state, int stateOffset) {
+        int row = 0;
+        for (int j = 1; j <= n; j++) {
+            rowCell[j] = parent[parentOffset + j - 1];
+            v[j] = parent[parentOffset + n + j - 1];
+            p[j] = j;
+            if (rowCell[j] == from) row = j;
+        }
+        rowCell[row] = to;
+        for (int i = 1; i <= n; i++) u[i] = cost(i, i) - v[i];
+
+        int best = UNSET;
+        for (int j = 1; j <= n; j++) best = Math.min(best, cost(row, j) - v[j]);
+        if (cost(row, row) - v[row] != best) {
+            p[row] = 0;
+            u[row] = 0;
+            v[0] = 0;
+            augment(row);
+        }
+        return save(state, stateOffset);
+    }
+
+    private int cost(int i, int j) { return distances[(j - 1) * board.cells + rowCell[i]]; }
+
+    // 以 i 行为起点沿约化费用为 0 的边找一条增广路（Dijkstra 形式），同时维护对偶势 u、v
+    private void augment(int i) {
+        p[0] = i;
+        int j0 = 0;
+        Arrays.fill(minv, UNSET);
+        Arrays.fill(used, false);
+        do {
+            used[j0] = true;
+            int i0 = p[j0], delta = UNSET, j1 = 0;
+            for (int j = 1; j <= n; j++) {
+                if (used[j]) continue;
+                int cur = cost(i0, j) - u[i0] - v[j];
+                if (cur < minv[j]) {
+                    minv[j] = cur;
+                    way[j] = j0;
+                }
+                if (minv[j] < delta) {
+                    delta = minv[j];
+                    j1 = j;
+                }
+            }
+            for (int j = 0; j <= n; j++) {
+                if (used[j]) {
+                    u[p[j]] += delta;
+                    v[j] -= delta;
+                } else {
+                    minv[j] -= delta;
+                }
+            }
+            j0 = j1;
+        } while (p[j0] != 0);
+        do {
+            int j1 = way[j0];
+            p[j0] = p[j1];
+            j0 = j1;
+        } while (j0 != 0);
+    }
+
+    private int save(int[] state, int stateOffset) {
+        int total = 0;
+        for (int j = 1; j <= n; j++) {
+            total += cost(p[j], j);
+            if (state == null) continue;
+            state[stateOffset + j - 1] = rowCell[p[j]];
+            state[stateOffset + n + j - 1] = v[j];
+        }
+        return total >= Board.UNREACHABLE ? INFINITE : total;
+    }
+}
@@ -0,0 +1,125 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// 以基本类型数组保存搜索结点，第 i 个结点的箱子位图位于 boxes[i * words, (i + 1) * words)，
+// 启用增量启发时它的匹配状态位于 matchings[i * matchingStride, (i + 1) * matchingStride)
+class NodeStore {
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private final int words, matchingStride;
+    private long[] boxes, key;
+    private int[] hero, cost, estimate, parent, matchings;
+    private byte[] move;
+    private int size = 0;
+
+    NodeStore(int words, int matchingStride) {
+        this.words = words;
+        this.matchingStride = matchingStride;
+        boxes = new long[INITIAL_CAPACITY * words];
+        matchings = new int[INITIAL_CAPACITY * matchingStride];
+        key = new long[INITIAL_CAPACITY];
+        hero = new int[INITIAL_CAPACITY];
+        cost = new int[INITIAL_CAPACITY];
+        estimate = new int[INITIAL_CAPACITY];
+        parent = new int[INITIAL_CAPACITY];
+        move = new byte[INITIAL_CAPACITY];
+    }
+
+    // 根结点的 parent 为 -1，move 记录从父结点走到该结点的那一步，estimate 为启发函数值
+    int add(long[] boxes, long key, int hero, int parent, byte move, int cost, int estimate) {
+        return add(boxes, 0, key, hero, parent, move, cost, estimate);
+    }
+
+    int add(long[] boxes, int offset, long key, int hero, int parent, byte move, int cost, int estimate) {
+        if (size == this.hero.length) grow();
+        System.arraycopy(boxes, offset, this.boxes, size * words, words);
+        this.key[size] = key;
+        this.hero[size] = hero;
+        this.parent[size] = parent;
+        this.move[size] = move;
+        this.cost[size] = cost;
+        this.estimate[size] = estimate;
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = hero.length * 2;
+        boxes = Arrays.copyOf(boxes, capacity * words);
+        matchings = Arrays.copyOf(matchings, capacity * matchingStride);
+        key = Arrays.copyOf(key, capacity);
+        hero = Arrays.copyOf(hero, capacity);
+        cost = Arrays.copyOf(cost, capacity);
+        estimate = Arrays.copyOf(estimate, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        move = Arrays.copyOf(move, capacity);
+    }
+
+    int size() { return size; }
+    void clear() { size = 0; } // 保留容量，供反复使用的小搜索
+    long[] boxes() { return boxes; }
+    int offset(int node) { return node * words; }
+    long key(int node) { return key[node]; }
+    int hero(int node) { return hero[node]; }
+    int cost(int node) { return cost[node]; }
+    int estimate(int node) { return estimate[node]; }
+    int parent(int node) { return parent[node]; }
+    byte move(int node) { return move[node]; }
+
+    void copyBoxes(int node, long[] target) { System.arraycopy(boxes, node * words, target, 0, words); }
+
+    int[] matchings() { return matchings; }
+    int matchingStride() { return matchingStride; }
+    int matchingOffset(int node) { return node * matchingStride; }
+    long nodeBytes() { return words * 8L + 8 + 4 * 5 + 1 + matchingStride * 4L; }
+    // 检查点读写：按字段依次写出前 size 个结点，读回时覆盖当前内容
+    long bytes() { return size * nodeBytes(); }
+
+    void write(ByteBuffer out) {
+        putLongs(out, boxes, size * words);
+        putLongs(out, key, size);
+        putInts(out, hero, size);
+        putInts(out, cost, size);
+        putInts(out, estimate, size);
+        putInts(out, parent, size);
+        out.put(move, 0, size);
+        putInts(out, matchings, size * matchingStride);
+    }
+
+    void read(ByteBuffer in, int count) {
+        while (hero.length < count) grow();
+        size = count;
+        getLongs(in, boxes, size * words);
+        getLongs(in, key, size);
+        getInts(in, hero, size);
+        getInts(in, cost, size);
+        getInts(in, estimate, size);
+        getInts(in, parent, size);
+        in.get(move, 0, size);
+        getInts(in, matchings, size * matchingStride);
+    }
+
+    // 通过视图批量读写，再手动推进缓冲区的位置
+    static void putLongs(ByteBuffer out, long[] values, int length) {
+        out.asLongBuffer().put(values, 0, length);
+        out.position(out.position() + length * 8);
+    }
+    static void putInts(ByteBuffer out, int[] values, int length) {
+        out.asIntBuffer().put(values, 0, length);
+        out.position(out.position() + length * 4);
+    }
+    static void getLongs(ByteBuffer in, long[] values, int length) {
+        in.asLongBuffer().get(values, 0, length);
+        in.position(in.position() + length * 8);
+    }
+    static void getInts(ByteBuffer in, int[] values, int length) {
+        in.asIntBuffer().get(values, 0, length);
+        in.position(in.position() + length * 4);
+    }
+
+    void setMatching(int node, int[] matching) { setMatching(node, matching, 0); }
+    void setMatching(int node, int[] matching, int offset) {
+        System.arraycopy(matching, offset, matchings, node * matchingStride, matchingStride);
+    }
+}
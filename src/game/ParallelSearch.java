@@ -0,0 +1,260 @@
+package game;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// 哈希分布的并行 A*（HDA*，推箱模式）：按 Zobrist 键把状态分给 N 个工作线程，每个线程独占自己的开表和闭表，
+// 生成的子结点按所属线程攒成批，经无锁队列发过去。结点用全局引用 node * threads + worker 互相指向
+class ParallelSearch {
+    private static final int BATCH = 64; // 每批子结点数
+    private static final int ROUND = 32; // 每轮扩展的结点数，一轮结束把未满的批次也发出去
+    private static final long IDLE_NANOS = 20_000;
+    private static final byte PUSH = 4;
+
+    private final Board board;
+    private final long[] startBoxes;
+    private final int startHero, threads;
+    private final Worker[] workers;
+    private final AtomicInteger active = new AtomicInteger(); // 忙碌的线程数加上在途的批次数，降到 0 即状态空间已穷尽
+    private final AtomicInteger goal = new AtomicInteger(Search.NOT_FOUND); // 目标结点的全局引用
+    private volatile boolean stopped, timedOut, cancelled, outOfMemory;
+    private int rate;
+    private long deadline;
+
+    // memoryBudget 为所有线程的结点仓库与闭表共用的字节预算，平均分给各线程
+    ParallelSearch(Board board, long[] startBoxes, int startHero, int threads, long memoryBudget) {
+        this.board = board;
+        this.startBoxes = startBoxes;
+        this.startHero = startHero;
+        this.threads = threads;
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new Worker(i, memoryBudget / threads);
+    }
+
+    int threads() { return threads; }
+    void cancel() {
+        cancelled = true;
+        stopped = true;
+    }
+    int expanded() {
+        int total = 0;
+        for (Worker worker : workers) total += worker.expanded;
+        return total;
+    }
+
+    // 与 Search.run 相同，返回目标结点的全局引用，或 NOT_FOUND / TIME_OUT / CANCELLED / OUT_OF_MEMORY；
+    // 找到的第一个目标即返回。0 号工作线程在调用线程上运行，其余交给 helpers，它必须能同时运行 threads - 1 个任务
+    int run(int rate, long deadline, Executor helpers) throws InterruptedException {
+        this.rate = rate;
+        this.deadline = deadline;
+        Worker first = workers[0];
+        int hero = first.reach.fill(startBoxes, 0, startHero);
+        int estimate = first.matching.solve(startBoxes, 0, first.assignment, 0);
+        if (estimate == Matching.INFINITE) return Search.NOT_FOUND;
+        long key = board.key(startBoxes, hero);
+        workers[owner(key)].insert(startBoxes, 0, key, hero, -1, (byte) 0, 0, estimate, first.assignment, 0);
+
+        active.set(threads);
+        CountDownLatch done = new CountDownLatch(threads - 1);
+        for (int i = 1; i < threads; i++) {
+            Worker worker = workers[i];
+            helpers.execute(() -> {
+                try {
+                    worker.run();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            first.run();
+            done.await();
+        } finally {
+            stopped = true; // 调用线程被中断时也让工作线程尽快退出
+        }
+        if (goal.get() >= 0) return goal.get();
+        if (cancelled) return Search.CANCELLED;
+        if (outOfMemory) return Search.OUT_OF_MEMORY;
+        return timedOut ? Search.TIME_OUT : Search.NOT_FOUND;
+    }
+
+    // 取键的高位决定所属线程，与 StateTable 用低位定位互不相关
+    private int owner(long key) { return (int) ((key >>> 32) % threads); }
+
+    // 工作线程都已结束后沿全局引用回溯
+    String steps(int ref) {
+        int length = 0;
+        for (int cur = ref; parent(cur) >= 0; cur = parent(cur)) length++;
+        int[] chain = new int[length + 1];
+        for (int cur = ref; cur >= 0; cur = parent(cur)) chain[length--] = cur;
+
+        StringBuilder steps = new StringBuilder();
+        Reachability reach = new Reachability(board);
+        long[] pair = new long[board.words * 2]; // 父子结点的箱子位图可能在不同线程的结点仓库里，先拷到一起
+        int hero = startHero;
+        for (int i = 1; i < chain.length; i++) {
+            NodeStore parent = workers[chain[i - 1] % threads].store, child = workers[chain[i] % threads].store;
+            int parentNode = chain[i - 1] / threads, childNode = chain[i] / threads;
+            System.arraycopy(parent.boxes(), parent.offset(parentNode), pair, 0, board.words);
+            System.arraycopy(child.boxes(), child.offset(childNode), pair, board.words, board.words);
+            hero = Search.appendPush(board, reach, pair, 0, board.words, child.move(childNode) & 3, hero, steps);
+        }
+        return steps.toString();
+    }
+
+    private int parent(int ref) { return workers[ref % threads].store.parent(ref / threads); }
+
+    // 发往同一线程的一批子结点，各字段平铺在基本类型数组里
+    private static final class Batch {
+        final long[] boxes, keys;
+        final int[] heroes, parents, costs, estimates, matchings;
+        final byte[] moves;
+        int size = 0;
+
+        Batch(int words, int stride) {
+            boxes = new long[BATCH * words];
+            keys = new long[BATCH];
+            heroes = new int[BATCH];
+            parents = new int[BATCH];
+            costs = new int[BATCH];
+            estimates = new int[BATCH];
+            matchings = new int[BATCH * stride];
+            moves = new byte[BATCH];
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final int id;
+        final NodeStore store;
+        final StateTable visited;
+        final BucketQueue open = new BucketQueue();
+        final long memoryBudget;
+        final ConcurrentLinkedQueue<Batch> inbox = new ConcurrentLinkedQueue<>();
+        final Batch[] outbox;
+        final Reachability reach;
+        final Matching matching;
+        final FreezeDetector freeze;
+        final long[] boxes;
+        final int[] pushes, assignment;
+        int expanded = 0;
+        boolean busy = true;
+
+        Worker(int id, long memoryBudget) {
+            this.id = id;
+            this.memoryBudget = memoryBudget;
+            visited = new StateTable(memoryBudget);
+            reach = new Reachability(board);
+            matching = new Matching(board);
+            freeze = new FreezeDetector(board);
+            store = new NodeStore(board.words, matching.stride());
+            outbox = new Batch[threads];
+            boxes = new long[board.words];
+            pushes = new int[board.cells * 4];
+            assignment = new int[matching.stride()];
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                for (Batch batch = inbox.poll(); batch != null; batch = inbox.poll()) receive(batch);
+                if (!open.isEmpty()) {
+                    for (int i = 0; i < ROUND && !open.isEmpty() && !stopped; i++) expand(open.pop());
+                    for (int i = 0; i < threads; i++) if (outbox[i] != null) send(i);
+                    if (System.currentTimeMillis() > deadline) {
+                        timedOut = true;
+                        stopped = true;
+                    }
+                } else if (busy) {
+                    busy = false;
+                    if (active.decrementAndGet() == 0) stopped = true;
+                } else {
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+            }
+        }
+
+        // 空闲线程收到批次时由批次的计数转为自己的忙碌计数，忙碌线程收到时直接抵消
+        private void receive(Batch batch) {
+            if (busy) {
+                active.decrementAndGet();
+            } else {
+                busy = true;
+            }
+            int stride = matching.stride();
+            for (int i = 0; i < batch.size; i++) {
+                insert(batch.boxes, i * board.words, batch.keys[i], batch.heroes[i], batch.parents[i], batch.moves[i],
+                        batch.costs[i], batch.estimates[i], batch.matchings, i * stride);
+            }
+        }
+
+        void insert(long[] source, int offset, long key, int hero, int parent, byte move, int cost, int estimate,
+                    int[] matchings, int matchingOffset) {
+            if (visited.get(key) >= 0) return;
+            int node = store.add(source, offset, key, hero, parent, move, cost, estimate);
+            store.setMatching(node, matchings, matchingOffset);
+            if (!visited.put(key, node) || store.bytes() + visited.bytes() > memoryBudget) {
+                outOfMemory = true;
+                stopped = true;
+                return;
+            }
+            open.push(node, cost + rate * estimate, estimate);
+        }
+
+        private void send(int target) {
+            active.incrementAndGet(); // 先计数再入队，接收方处理完才抵消
+            workers[target].inbox.add(outbox[target]);
+            outbox[target] = null;
+        }
+
+        private void expand(int cur) {
+            expanded++;
+            long[] nodes = store.boxes();
+            int offset = store.offset(cur), hero = store.hero(cur);
+            int count = reach.pushes(nodes, offset, hero, pushes);
+
+            int parent = cur * threads + id, cost = store.cost(cur) + 1;
+            for (int i = 0; i < count; i++) {
+                int box = pushes[i] / 4, dir = pushes[i] % 4, target = board.next(box, dir);
+                store.copyBoxes(cur, boxes);
+                Board.flip(boxes, box);
+                Board.flip(boxes, target);
+                if (freeze.isDeadlock(boxes, target)) continue;
+                int newHero = reach.fill(boxes, 0, box);
+                long key = store.key(cur) ^ board.boxKeys[box] ^ board.boxKeys[target]
+                        ^ board.heroKeys[hero] ^ board.heroKeys[newHero];
+                int owner = owner(key);
+                if (owner == id && visited.get(key) >= 0) continue;
+
+                int estimate = matching.repair(store.matchings(), store.matchingOffset(cur), box, target, assignment, 0);
+                if (estimate == Matching.INFINITE) continue;
+                byte move = (byte) (dir | PUSH);
+                if (board.isSolved(boxes, 0)) {
+                    // 目标结点存在自己的仓库里即可回溯，不必发给所属线程
+                    int node = store.add(boxes, key, newHero, parent, move, cost, 0);
+                    if (goal.compareAndSet(Search.NOT_FOUND, node * threads + id)) stopped = true;
+                    return;
+                }
+
+                if (owner == id) {
+                    insert(boxes, 0, key, newHero, parent, move, cost, estimate, assignment, 0);
+                    continue;
+                }
+                Batch batch = outbox[owner];
+                if (batch == null) batch = outbox[owner] = new Batch(board.words, matching.stride());
+                int j = batch.size++;
+                System.arraycopy(boxes, 0, batch.boxes, j * board.words, board.words);
+                System.arraycopy(assignment, 0, batch.matchings, j * assignment.length, assignment.length);
+                batch.keys[j] = key;
+                batch.heroes[j] = newHero;
+                batch.parents[j] = parent;
+                batch.moves[j] = move;
+                batch.costs[j] = cost;
+                batch.estimates[j] = estimate;
+                if (batch.size == BATCH) send(owner);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package game;
+
+import java.util.Arrays;
+
+// 局部死锁模式：被推箱子 RADIUS 步以内的箱子构成一个局部布局，以这些箱子 Zobrist 键的异或作为紧凑哈希，
+// 在按关卡持久化的模式库里查找。库里没有的布局，在只保留这些箱子的地图上从英雄的每个可能区域做一次小搜索：
+// 箱子既推不出邻域、也放不满目标即为死局，记入模式库。少了其余箱子只会让局面更宽松，所以结论可靠。
+// 没能证明死局的布局同样记入模式库（只在内存中），小搜索的结点仓库与状态表每次清空后复用
+class PatternDetector {
+    private static final int RADIUS = 2;
+    private static final int SEARCH_LIMIT = 1000; // 小搜索最多展开的状态数，超出时不下结论
+    private static final long TABLE_BYTES = 1 << 20; // 小搜索状态表的字节上限，放不下时不下结论
+
+    private final Board board;
+    private final DeadlockPatterns patterns;
+    private final int[][] neighbourhood; // 每个格子 RADIUS 步以内的地板格，含自身
+    private final NodeStore store;
+    private final StateTable visited = new StateTable(TABLE_BYTES);
+    private final FreezeDetector freeze;
+    private final Reachability reach;
+    private final boolean[] inside, seen;
+    private final int[] moves;
+    private final long[] local, boxes;
+    private int matched = 0, learned = 0;
+
+    PatternDetector(Board board) {
+        this.board = board;
+        patterns = DeadlockPatterns.of(board);
+        freeze = new FreezeDetector(board);
+        reach = new Reachability(board);
+        inside = new boolean[board.cells];
+        seen = new boolean[board.cells];
+        moves = new int[board.cells * 4];
+        local = new long[board.words];
+        boxes = new long[board.words];
+        store = new NodeStore(board.words, 0);
+
+        neighbourhood = new int[board.cells][];
+        int[] queue = new int[board.cells], distance = new int[board.cells];
+        for (int cell = 0; cell < board.cells; cell++) {
+            Arrays.fill(distance, -1);
+            distance[cell] = 0;
+            queue[0] = cell;
+            int tail = 1;
+            for (int head = 0; head < tail; head++) {
+                if (distance[queue[head]] == RADIUS) continue;
+                for (int dir = 0; dir < 4; dir++) {
+                    int next = board.next(queue[head], dir);
+                    if (next < 0 || distance[next] >= 0) continue;
+                    distance[next] = distance[queue[head]] + 1;
+                    queue[tail++] = next;
+                }
+            }
+            neighbourhood[cell] = Arrays.copyOf(queue, tail);
+        }
+    }
+
+    int matched() { return matched; } // 命中模式库的次数
+    int learned() { return learned; } // 本实例新证明的模式数
+
+    // 箱子刚被推到 box：它邻域里的箱子已成死局时返回 true
+    boolean isDeadlock(long[] boxes, int box) {
+        long key = window(boxes, box);
+        if (key == 0) return false;
+        if (patterns.containsWindow(key)) {
+            matched++;
+            return true;
+        }
+        if (patterns.isAliveWindow(key)) return false;
+        if (provenDead(box)) {
+            patterns.addWindow(key);
+            learned++;
+            return true;
+        }
+        patterns.addAliveWindow(key);
+        return false;
+    }
+
+    // 只查模式库、不做小搜索，供渲染线程上的死锁提示使用
+    boolean isKnownDeadlock(long[] boxes, int box) {
+        long key = window(boxes, box);
+        return key != 0 && patterns.containsWindow(key);
+    }
+
+    // 把 box 邻域里的箱子放进 local，返回它们的键；单个箱子由死格表负责，全在目标上的布局不会是死局，这两种返回 0
+    private long window(long[] boxes, int box) {
+        Arrays.fill(local, 0);
+        long key = 0;
+        int count = 0;
+        boolean open = false;
+        for (int cell : neighbourhood[box]) {
+            if (!Board.has(boxes, cell)) continue;
+            Board.set(local, cell);
+            key ^= board.boxKeys[cell];
+            count++;
+            open |= !board.isGoal(cell);
+        }
+        return count < 2 || !open ? 0 : key;
+    }
+
+    // local 中为邻域里的箱子。英雄的每个连通区域都作为小搜索的根，任一根出发能把箱子推出邻域或全部放上目标就不是死局
+    private boolean provenDead(int box) {
+        for (int cell : neighbourhood[box]) inside[cell] = true;
+        try {
+            store.clear();
+            visited.clear();
+            Arrays.fill(seen, false);
+            for (int cell = 0; cell < board.cells; cell++) {
+                if (seen[cell] || Board.has(local, cell)) continue;
+                int region = reach.fill(local, 0, cell);
+                for (int other = cell; other < board.cells; other++) if (reach.reached(other)) seen[other] = true;
+                long key = board.key(local, region);
+                visited.put(key, store.add(local, key, region, -1, (byte) 0, 0, 0));
+            }
+
+            for (int cur = 0; cur < store.size(); cur++) {
+                if (cur == SEARCH_LIMIT) return false;
+                long[] nodes = store.boxes();
+                int count = reach.pushes(nodes, store.offset(cur), store.hero(cur), moves);
+                for (int i = 0; i < count; i++) {
+                    int from = moves[i] / 4, target = board.next(from, moves[i] % 4);
+                    if (!inside[target]) return false;
+                    store.copyBoxes(cur, boxes);
+                    Board.flip(boxes, from);
+                    Board.flip(boxes, target);
+                    if (board.isSolved(boxes, 0)) return false;
+                    if (freeze.isDeadlock(boxes, target)) continue;
+                    int newHero = reach.fill(boxes, 0, from);
+                    long key = board.key(boxes, newHero);
+                    if (visited.get(key) >= 0) continue;
+                    if (!visited.put(key, store.size())) return false;
+                    store.add(boxes, key, newHero, cur, (byte) 0, 0, 0);
+                }
+            }
+            return true;
+        } finally {
+            for (int cell : neighbourhood[box]) inside[cell] = false;
+        }
+    }
+}
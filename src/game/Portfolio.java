@@ -0,0 +1,99 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// 在有界线程池上同时运行几种求解策略，采用最先得到的合法解；其余策略通过取消标志协作退出，不会空转
+class Portfolio {
+    enum Strategy {
+        GREEDY(true, 10),   // 推箱模式，启发权重很大，近似贪心
+        WEIGHTED(false, 2), // 逐步模式的加权 A*
+        PUSH_LEVEL(true, 1); // 推箱模式的 A*，推动次数最少
+
+        final boolean pushLevel;
+        final int rate;
+
+        Strategy(boolean pushLevel, int rate) {
+            this.pushLevel = pushLevel;
+            this.rate = rate;
+        }
+    }
+
+    private final Board board;
+    private final long[] boxes;
+    private final int hero;
+    private final ExecutorService executor;
+    private final long memoryBudget;
+    private final List<Search> searches = new ArrayList<>();
+    private volatile boolean finished = false, exhausted = false;
+    private volatile Strategy winner;
+
+    // memoryBudget 为各策略闭表共用的字节预算，平均分给各策略
+    Portfolio(Board board, long[] boxes, int hero, ExecutorService executor, long memoryBudget) {
+        this.board = board;
+        this.boxes = boxes;
+        this.hero = hero;
+        this.executor = executor;
+        this.memoryBudget = memoryBudget;
+    }
+
+    Strategy winner() { return winner; }
+    boolean exhausted() { return exhausted; } // 有策略穷尽了状态空间，证明无解
+
+    // 返回最先找到的合法解；所有策略都失败、超时或被证明无解时返回 null
+    String solve(long deadline) throws InterruptedException {
+        CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<String>, Strategy> futures = new HashMap<>();
+        for (Strategy strategy : Strategy.values()) futures.put(completion.submit(() -> run(strategy, deadline)), strategy);
+        try {
+            for (int i = 0; i < futures.size() && !exhausted; i++) {
+                Future<String> done = completion.take();
+                String steps;
+                try {
+                    steps = done.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace(); // 单个策略出错不影响其它策略
+                    continue;
+                }
+                if (steps != null) {
+                    winner = futures.get(done);
+                    return steps;
+                }
+            }
+            return null;
+        } finally {
+            cancel();
+            for (Future<String> future : futures.keySet()) future.cancel(false); // 还在排队的策略不再启动
+        }
+    }
+
+    private String run(Strategy strategy, long deadline) {
+        Search search = new Search(board, boxes, hero, strategy.pushLevel);
+        search.memoryBudget = memoryBudget / Strategy.values().length;
+        synchronized (searches) {
+            if (finished) return null;
+            searches.add(search);
+        }
+        int goal = search.run(strategy.rate, deadline);
+        if (goal == Search.NOT_FOUND) exhausted = true;
+        if (goal < 0) return null;
+
+        String steps = search.steps(goal);
+        return board.replays(boxes, hero, steps) ? steps : null;
+    }
+
+    // 可从其它线程调用：让所有已开始的策略退出，之后开始的策略直接返回
+    void cancel() {
+        synchronized (searches) {
+            finished = true;
+            for (Search search : searches) search.cancel();
+        }
+    }
+}
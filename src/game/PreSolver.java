@@ -0,0 +1,151 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 登录后在后台预先求解每个关卡的初始局面，结果写入共享的解缓存：第一次点 Solve 即刻得到答案，
+// 沿着这条解走到的后续局面也能从初始局面的解接着重放（见 Solver.cached）。
+// 搜索作为后台任务提交给 SolverScheduler，与玩家的求解共用名额：玩家一点 Solve，正在进行的预先求解就存下检查点
+// 让出名额，等玩家的求解都结束后再从检查点接着搜。这里的线程只负责按关卡提交任务、等待结果
+public class PreSolver {
+    private static final String MAP_FILE_PATH = "assets/maps/";
+    private static final long TIME_LIMIT = 60000; // 每关累计最多搜这么久，没来得及证明最优的解也先存着
+    private static final String CHECKPOINT_PREFIX = "presolve";
+    private static final long IDLE_WAIT = 500; // 玩家的求解还在排队或运行时隔这么久再看一次
+    private static boolean started = false;
+
+    // 关卡的初始局面
+    static final class Start {
+        final Board board;
+        final long[] boxes;
+        final int hero;
+
+        Start(Board board, long[] boxes, int hero) {
+            this.board = board;
+            this.boxes = boxes;
+            this.hero = hero;
+        }
+    }
+
+    // 一关的一次后台搜索：被玩家的求解打断时 preempted 为 true，存下了检查点、之后要接着搜时 paused 为 true
+    private static final class Attempt {
+        private volatile Search search;
+        private volatile boolean preempted = false, paused = false;
+
+        // 先登记标志再取消，与搜索开始并发时也不会漏掉
+        void preempt() {
+            preempted = true;
+            Search current = search;
+            if (current != null) current.cancel();
+        }
+
+        void watch(Search search) {
+            this.search = search;
+            if (preempted) search.cancel();
+        }
+    }
+
+    // 每个进程只启动一次，重复登录不会再开一批线程
+    public static synchronized void start(int levelCount) {
+        if (started) return;
+        started = true;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2); // 留出渲染与玩家求解的核
+        AtomicInteger next = new AtomicInteger(1);
+        for (int i = 0; i < Math.min(threads, levelCount); i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int level = next.getAndIncrement(); level <= levelCount; level = next.getAndIncrement()) {
+                        solve(level, threads);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "pre-solver-" + i);
+            thread.setDaemon(true); // 不阻止程序退出
+            thread.start();
+        }
+        System.out.println("Pre-solving " + levelCount + " levels, " + Math.min(threads, levelCount) + " at a time");
+    }
+
+    static Start readStart(Path mapFile) throws IOException {
+        MapFile file = MapFile.read(mapFile);
+        Board board = new Board(file.map, file.rows, file.cols);
+        return new Start(board, board.boxes(file.map), board.cell(file.heroX, file.heroY));
+    }
+
+    // 被打断后等玩家的求解结束再提交，直到证明最优、无解或累计用完 TIME_LIMIT
+    private static void solve(int level, int threads) throws InterruptedException {
+        Path mapFile = Paths.get(MAP_FILE_PATH + level + ".txt");
+        if (!new File(mapFile.toString()).exists()) return;
+        Start start;
+        long key;
+        try {
+            start = readStart(mapFile);
+            key = SolutionCache.key(SolutionCache.hashFile(mapFile), start.board, start.boxes, start.hero);
+        } catch (IOException e) {
+            System.out.println("Skipping pre-solve of level " + level + ": " + e.getMessage());
+            return;
+        }
+        if (key == 0 || SolutionCache.shared().contains(key)) return;
+
+        for (long used = 0; used < TIME_LIMIT && !SolutionCache.shared().contains(key); ) {
+            while (SolverScheduler.shared().foreground() > 0) Thread.sleep(IDLE_WAIT);
+            Attempt attempt = new Attempt();
+            CountDownLatch done = new CountDownLatch(1);
+            long begin = System.currentTimeMillis(), remaining = TIME_LIMIT - used;
+            try {
+                SolverScheduler.shared().executeBackground(() -> {
+                    try {
+                        search(level, start, key, threads, remaining, attempt);
+                    } finally {
+                        done.countDown();
+                    }
+                }, attempt::preempt);
+            } catch (RejectedExecutionException e) {
+                Thread.sleep(IDLE_WAIT); // 玩家的求解把队列占满了
+                continue;
+            }
+            done.await();
+            used += System.currentTimeMillis() - begin;
+            if (!attempt.paused) return;
+            System.out.println("Pre-solve of level " + level + " paused for a player solve");
+        }
+    }
+
+    // 在求解线程上运行：从检查点（如果有）接着搜，被打断时存检查点，结束时删掉它
+    private static void search(int level, Start start, long key, int threads, long timeLimit, Attempt attempt) {
+        long startTime = System.currentTimeMillis();
+        Search search = new Search(start.board, start.boxes, start.hero, true);
+        search.memoryBudget = Runtime.getRuntime().maxMemory() / (4L * threads);
+        Path checkpoint = search.checkpointPath(CHECKPOINT_PREFIX); // 与玩家的求解分开存，互不覆盖
+        try {
+            if (search.restore(checkpoint)) {
+                System.out.println("Pre-solve of level " + level + " resumed after " + search.expanded() + " expansions");
+            }
+            attempt.watch(search);
+            int goal = search.runAnytime(startTime + timeLimit, node -> {});
+            if (attempt.preempted && search.resumable()) {
+                search.save(checkpoint);
+                attempt.paused = true;
+                return;
+            }
+            Files.deleteIfExists(checkpoint);
+            if (goal >= 0) {
+                SolutionCache.shared().put(key, start.hero, search.complete(), search.steps(goal));
+                System.out.println("Pre-solved level " + level + ": " + search.cost(goal) + " pushes"
+                        + (search.complete() ? "" : " (not proven optimal)") + " in "
+                        + (System.currentTimeMillis() - startTime) + " ms");
+            }
+        } catch (IOException e) {
+            System.out.println("Pre-solve checkpoint of level " + level + " failed: " + e.getMessage());
+        } finally {
+            DeadlockPatterns.of(start.board).save();
+        }
+    }
+}
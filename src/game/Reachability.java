@@ -0,0 +1,75 @@
+package game;
+
+import java.util.Arrays;
+
+// 英雄可达区域的泛洪填充，每个搜索线程持有一份，用时间戳代替每次清空标记数组
+class Reachability {
+    private final Board board;
+    private final int[] mark, queue, prev;
+    private int stamp = 0, origin;
+
+    Reachability(Board board) {
+        this.board = board;
+        mark = new int[board.cells];
+        queue = new int[board.cells];
+        prev = new int[board.cells];
+    }
+
+    // 从 hero 出发绕开箱子泛洪，返回可达区域中编号最小（即最左上）的格子
+    int fill(long[] boxes, int offset, int hero) {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(mark, 0);
+            stamp = 1;
+        }
+        origin = hero;
+        mark[hero] = stamp;
+        queue[0] = hero;
+        int head = 0, tail = 1, min = hero;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (cell < min) min = cell;
+            for (int dir = 0; dir < 4; dir++) {
+                int next = board.next(cell, dir);
+                if (next < 0 || mark[next] == stamp || Board.has(boxes, offset, next)) continue;
+                mark[next] = stamp;
+                prev[next] = dir;
+                queue[tail++] = next;
+            }
+        }
+        return min;
+    }
+
+    boolean reached(int cell) { return mark[cell] == stamp; }
+
+    // 从 hero 泛洪后收集所有可行的推动（箱子格 * 4 + 方向）写入 moves，返回个数：英雄够得着箱子后面的格子，
+    // 箱子前面不是墙、箱子或死格。泛洪的结果留给调用者接着用
+    int pushes(long[] boxes, int offset, int hero, int[] moves) {
+        fill(boxes, offset, hero);
+        int count = 0;
+        for (int word = 0; word < board.words; word++) {
+            for (long bits = boxes[offset + word]; bits != 0; bits &= bits - 1) {
+                int box = word * 64 + Long.numberOfTrailingZeros(bits);
+                for (int dir = 0; dir < 4; dir++) {
+                    int behind = board.next(box, (dir + 2) % 4), target = board.next(box, dir);
+                    if (behind < 0 || target < 0 || mark[behind] != stamp) continue;
+                    if (Board.has(boxes, offset, target) || board.isDead(target)) continue;
+                    moves[count++] = box * 4 + dir;
+                }
+            }
+        }
+        return count;
+    }
+
+    // 在最近一次 fill 的结果上，把从起点走到 target 的最短路径以小写 udlr 追加到 steps
+    void path(int target, StringBuilder steps) {
+        int start = steps.length();
+        for (int cell = target; cell != origin; cell = board.next(cell, (prev[cell] + 2) % 4)) {
+            steps.append(Solver.dir[prev[cell]]);
+        }
+        for (int i = start, j = steps.length() - 1; i < j; i++, j--) {
+            char c = steps.charAt(i);
+            steps.setCharAt(i, steps.charAt(j));
+            steps.setCharAt(j, c);
+        }
+    }
+}
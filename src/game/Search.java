@@ -0,0 +1,593 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.function.IntConsumer;
+
+// 单线程 A* 搜索。逐步模式下每个结点是英雄的一步；推箱模式下每个结点是一次推动，英雄归一化到可达区域的最左上格
+class Search {
+    static final int NOT_FOUND = -1;
+    static final int TIME_OUT = -2;
+    static final int CANCELLED = -3;
+    static final int OUT_OF_MEMORY = -4; // 结点仓库与闭表已用完字节预算，或堆先用完了
+    private static final byte PUSH = 4; // move 的第 2 位表示这一步推动了箱子
+    private static final byte MACRO = 8; // move 的第 3 位表示宏推动的中间结点，只用于回溯路径
+    private static final int UNIT = 10; // 启发权重以 0.1 为单位，f = UNIT * g + weight * h 始终是整数
+    // 任意时间搜索的权重从 1.1 起每轮降 0.1：匹配启发已经很准，在 SolverBenchmark 的关卡上权重越大第一个解反而越慢
+    private static final int START_WEIGHT = 11, WEIGHT_STEP = 1;
+    private static final int CHECKPOINT_MAGIC = 0x534B4350, CHECKPOINT_VERSION = 1, CHECKPOINT_HEADER = 64;
+    private static final String CHECKPOINT_PREFIX = "solver";
+    private static final int MAX_CHECKPOINTS = 8; // archives 中最多留这么多个检查点，多出的删掉最久没写过的
+
+    private final Board board;
+    private final boolean pushLevel;
+    private final long[] startBoxes;
+    private final int startHero;
+    private NodeStore store;
+    private BucketQueue open;
+    private StateTable visited;
+    private final Reachability reach;
+    private final Matching matching;
+    private final long[] boxes;
+    private final int[] pushes, assignment, segments;
+    private final long[] macroBoxes;
+    private final FreezeDetector freeze;
+    private final CorralDetector corrals;
+    private final PatternDetector patterns;
+    private final Macros macros;
+    private int expanded = 0, weight;
+    private volatile boolean cancelled = false;
+    private boolean outOfMemory = false;
+
+    // 任意时间搜索的状态：当前最好的目标结点、每个结点被扩展的轮次、本轮已扩展却又找到更短路径的结点
+    private boolean anytime = false;
+    private IntConsumer onSolution;
+    private int incumbent = NOT_FOUND, iteration = 1, inconsCount = 0;
+    private int[] closedIn = new int[1 << 12], incons = new int[64];
+    private boolean restored = false, complete = false;
+    private int interruption = 0; // 任意时间搜索被打断的原因：TIME_OUT / CANCELLED / OUT_OF_MEMORY
+    private ExternalFrontier frontier = null;
+    private int spillFrom = Integer.MAX_VALUE; // f 不小于它的新结点直接写入外存开表
+    private long spilled = 0;
+
+    boolean freezeDeadlocks = true; // 每次推动后检查被推箱子是否与墙、其它箱子互相卡死
+    // 每次推动后在死锁模式库里查被推箱子的邻域，没见过的布局用小搜索判定后记入。
+    // 在自带的关卡上省下的展开抵不过小搜索的耗时（见 SolverBenchmark），默认关闭
+    boolean learnedDeadlocks = false;
+    boolean corralPruning = true; // 推箱模式下存在 PI-corral 时只展开推进它的推动
+    boolean macroPushes = true; // 推箱模式下隧道与目标房间里的连续推动合并成一次转移
+    boolean incrementalHeuristic = true; // 结点上保存匹配状态，推动后只修复被推箱子的那一行
+    long memoryBudget = Long.MAX_VALUE; // 结点仓库（堆上）与闭表（堆外）合计的字节预算
+    long frontierBytes = Long.MAX_VALUE; // 开表在堆上超过这么多字节后，f 值最大的桶改为溢出到磁盘
+
+    Search(Board board, long[] startBoxes, int startHero, boolean pushLevel) {
+        this.board = board;
+        this.startBoxes = startBoxes;
+        this.startHero = startHero;
+        this.pushLevel = pushLevel;
+        reach = new Reachability(board);
+        matching = new Matching(board);
+        boxes = new long[board.words];
+        pushes = new int[board.cells * 4];
+        assignment = new int[matching.stride()];
+        freeze = new FreezeDetector(board);
+        corrals = new CorralDetector(board);
+        patterns = new PatternDetector(board);
+        macros = new Macros(board);
+        segments = new int[board.cells];
+        macroBoxes = new long[board.words];
+    }
+
+    int expanded() { return expanded; }
+    CorralDetector corrals() { return corrals; }
+    PatternDetector patterns() { return patterns; }
+    StateTable visited() { return visited; }
+    long spilled() { return spilled; } // 写入过外存开表的结点数
+    void cancel() { cancelled = true; } // 可从其它线程调用，搜索在扩展下一个结点前退出
+
+    // 返回目标结点编号，或 NOT_FOUND / TIME_OUT / CANCELLED / OUT_OF_MEMORY
+    int run(int rate, long deadline) {
+        weight = rate * UNIT;
+        try {
+            return start() ? improve(deadline) : NOT_FOUND;
+        } finally {
+            discardFrontier();
+        }
+    }
+
+    // ARA*：先以较大的权重快速找到一个解，再逐轮降低权重，沿用开表与已生成的结点继续改进，
+    // 每找到更短的解就回调一次。权重降到 1 且一轮结束即证明最优；返回最好的目标结点，或 NOT_FOUND / TIME_OUT
+    int runAnytime(long deadline, IntConsumer onSolution) {
+        anytime = true;
+        this.onSolution = onSolution;
+        try {
+            return improveAnytime(deadline);
+        } finally {
+            discardFrontier();
+        }
+    }
+
+    private int improveAnytime(long deadline) {
+        if (restored) {
+            if (incumbent >= 0) onSolution.accept(incumbent); // 检查点里已有的解先交出去
+        } else {
+            weight = START_WEIGHT;
+            if (!start()) {
+                complete = true;
+                return NOT_FOUND;
+            }
+        }
+        while (true) {
+            int result = improve(deadline);
+            if (result < NOT_FOUND) { // 超时、取消或内存用完
+                interruption = result;
+                return incumbent >= 0 ? incumbent : result;
+            }
+            complete = incumbent < 0 || weight == UNIT;
+            if (incumbent < 0) return NOT_FOUND; // 所有可达状态都已生成过，确实无解
+            if (weight == UNIT) return incumbent;
+            weight = Math.max(UNIT, weight - WEIGHT_STEP);
+            reorder();
+        }
+    }
+
+    int cost(int node) { return store.cost(node); }
+    int weight() { return weight; } // 当前权重，单位 0.1
+    boolean complete() { return complete; } // 已证明最优或无解
+
+    // 超时或被取消的精确任意时间搜索可以存成检查点，下次接着搜
+    boolean resumable() {
+        return anytime && !complete && (interruption == TIME_OUT || interruption == CANCELLED)
+                && incrementalHeuristic && spilled == 0; // 检查点不含外存开表
+    }
+
+    // 检查点文件名由地图指纹与归一化后的初始状态决定。prefix 区分写入者（玩家的求解、后台预先求解），
+    // 各自的检查点互不覆盖，也各自按 MAX_CHECKPOINTS 清理
+    Path checkpointPath() { return checkpointPath(CHECKPOINT_PREFIX); }
+    Path checkpointPath(String prefix) {
+        int hero = pushLevel ? reach.fill(startBoxes, 0, startHero) : startHero;
+        return Paths.get("archives", String.format("%s_%016x.ckpt", prefix, board.fingerprint ^ board.key(startBoxes, hero)));
+    }
+
+    // 把结点仓库、每个结点被扩展的轮次、开表与 INCONS 写入检查点文件。开表会被取空，保存后不能再搜索。
+    // 先写临时文件再替换，写到一半中断也不会毁掉上一次的检查点
+    void save(Path path) throws IOException {
+        int[] frontier = new int[open.size()];
+        int count = 0;
+        for (int node = open.pop(); node >= 0; node = open.pop()) {
+            if (visited.get(store.key(node)) == node && !pruned(node)) frontier[count++] = node;
+        }
+        int nodes = store.size();
+        if (closedIn.length < nodes) closedIn = Arrays.copyOf(closedIn, nodes);
+        long size = CHECKPOINT_HEADER + store.bytes() + 4L * (nodes + count + inconsCount);
+        if (size > Integer.MAX_VALUE) throw new IOException("Checkpoint larger than 2 GB"); // 单个缓冲区的上限
+
+        // 先写进堆上的缓冲区再整块写出：映射的缓冲区要等 GC 才解除映射，Windows 上在此之前无法移动或删除文件
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(CHECKPOINT_MAGIC).putInt(CHECKPOINT_VERSION).putLong(board.fingerprint).putLong(store.key(0))
+                .putInt(pushLevel ? 1 : 0).putInt(board.words).putInt(nodes).putInt(count).putInt(inconsCount)
+                .putInt(iteration).putInt(weight).putInt(incumbent).putInt(expanded);
+        out.position(CHECKPOINT_HEADER);
+        store.write(out);
+        NodeStore.putInts(out, closedIn, nodes);
+        NodeStore.putInts(out, frontier, count);
+        NodeStore.putInts(out, incons, inconsCount);
+        out.rewind(); // 整个缓冲区都写出，文件长度即 size，与 restore 核对的一致
+
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName() + ".", ".tmp"); // 每个写入者各用一个临时文件
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) channel.write(out);
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp); // 写入或替换失败时不留下临时文件
+        }
+        String name = path.getFileName().toString();
+        trimCheckpoints(path.getParent(), name.substring(0, name.lastIndexOf('_')));
+    }
+
+    // 从通道的当前位置读满缓冲区并翻转以便读取，文件提前结束时返回 false
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    // 同一前缀的检查点超过 MAX_CHECKPOINTS 个时删掉最久没写过的
+    private static void trimCheckpoints(Path dir, String prefix) throws IOException {
+        List<Path> checkpoints = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(file -> file.getFileName().toString().matches(prefix + "_[0-9a-f]{16}\\.ckpt"))
+                    .forEach(checkpoints::add);
+        }
+        if (checkpoints.size() <= MAX_CHECKPOINTS) return;
+        checkpoints.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        for (Path file : checkpoints.subList(0, checkpoints.size() - MAX_CHECKPOINTS)) Files.deleteIfExists(file);
+    }
+
+    // 读回检查点，之后的 runAnytime 接着搜；文件不存在、与当前关卡状态不符、长度与头部记录的个数对不上（写坏或截断）
+    // 或超出内存预算时返回 false，照常从头开始
+    boolean restore(Path path) throws IOException {
+        if (!Files.exists(path) || !incrementalHeuristic) return false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < CHECKPOINT_HEADER || size > Integer.MAX_VALUE) return false;
+            ByteBuffer in = ByteBuffer.allocate(CHECKPOINT_HEADER); // 先只读头部，核对无误再读其余部分
+            if (!readFully(channel, in)) return false;
+            if (in.getInt() != CHECKPOINT_MAGIC || in.getInt() != CHECKPOINT_VERSION) return false;
+            int hero = pushLevel ? reach.fill(startBoxes, 0, startHero) : startHero;
+            if (in.getLong() != board.fingerprint || in.getLong() != board.key(startBoxes, hero)) return false;
+            if (in.getInt() != (pushLevel ? 1 : 0) || in.getInt() != board.words) return false;
+            int nodes = in.getInt(), count = in.getInt(), inconsistent = in.getInt();
+            int savedIteration = in.getInt(), savedWeight = in.getInt(), savedIncumbent = in.getInt();
+            int savedExpanded = in.getInt();
+            if (nodes <= 0 || count < 0 || inconsistent < 0) return false;
+
+            NodeStore savedStore = new NodeStore(board.words, matching.stride());
+            if (size != CHECKPOINT_HEADER + nodes * savedStore.nodeBytes() + 4L * ((long) nodes + count + inconsistent)) {
+                return false;
+            }
+            in = ByteBuffer.allocate((int) (size - CHECKPOINT_HEADER));
+            if (!readFully(channel, in)) return false;
+            savedStore.read(in, nodes);
+            for (int node = 0; node < nodes; node++) {
+                if (savedStore.parent(node) >= node) return false; // 父结点总是先生成
+            }
+            // 按编号顺序重新登记，后生成的（更短路径的）结点覆盖同一状态的旧结点，与搜索时一致
+            StateTable savedVisited = new StateTable(memoryBudget);
+            for (int node = 0; node < nodes; node++) {
+                if ((savedStore.move(node) & MACRO) != 0) continue;
+                if (!savedVisited.put(savedStore.key(node), node)) return false;
+            }
+            if (savedStore.bytes() + savedVisited.bytes() > memoryBudget) return false;
+
+            int[] savedClosedIn = new int[Math.max(nodes, 1 << 12)];
+            NodeStore.getInts(in, savedClosedIn, nodes);
+            int[] frontier = new int[count];
+            NodeStore.getInts(in, frontier, count);
+            int[] savedIncons = new int[Math.max(inconsistent, 64)];
+            NodeStore.getInts(in, savedIncons, inconsistent);
+            for (int node : frontier) if (node < 0 || node >= nodes) return false;
+            for (int i = 0; i < inconsistent; i++) if (savedIncons[i] < 0 || savedIncons[i] >= nodes) return false;
+
+            store = savedStore;
+            visited = savedVisited;
+            closedIn = savedClosedIn;
+            iteration = savedIteration;
+            weight = savedWeight;
+            incumbent = savedIncumbent;
+            expanded = savedExpanded;
+            open = new BucketQueue();
+            for (int node : frontier) open.push(node, f(node), store.estimate(node));
+            incons = savedIncons;
+            inconsCount = inconsistent;
+            restored = true;
+            return true;
+        }
+    }
+
+    private boolean start() {
+        open = new BucketQueue();
+        visited = new StateTable(memoryBudget);
+        store = new NodeStore(board.words, incrementalHeuristic ? matching.stride() : 0);
+        int hero = pushLevel ? reach.fill(startBoxes, 0, startHero) : startHero;
+        int estimate = matching.solve(startBoxes, 0, assignment, 0);
+        if (estimate == Matching.INFINITE) return false;
+        int root = store.add(startBoxes, board.key(startBoxes, hero), hero, -1, (byte) 0, 0, estimate);
+        if (incrementalHeuristic) store.setMatching(root, assignment);
+        open.push(root, f(root), estimate);
+        visited.put(store.key(root), root);
+        return true;
+    }
+
+    // 一轮加权搜索。任意时间模式下开表的最小 f 不小于当前解的 f 时本轮结束
+    private int improve(long deadline) {
+        while (true) {
+            if (frontier != null) unspill();
+            if (outOfMemory) return OUT_OF_MEMORY;
+            if (open.isEmpty()) break;
+            if (incumbent >= 0 && open.minF() >= UNIT * store.cost(incumbent)) break;
+            int cur = open.pop();
+            if (anytime && (visited.get(store.key(cur)) != cur || pruned(cur))) continue; // 已被更短路径取代
+            close(cur);
+            int goal;
+            try {
+                goal = pushLevel ? expandPushes(cur) : expandSteps(cur);
+            } catch (OutOfMemoryError e) {
+                return OUT_OF_MEMORY; // 预算设得比堆还大，结点仓库扩容失败
+            }
+            expanded++;
+            if (goal >= 0) return goal;
+            if (System.currentTimeMillis() > deadline) return TIME_OUT;
+            if (cancelled) return CANCELLED;
+            if (outOfMemory) return OUT_OF_MEMORY;
+        }
+        return incumbent >= 0 ? incumbent : NOT_FOUND;
+    }
+
+    // 权重降低后，开表与 INCONS 中仍然有效的结点按新的 f 值重新入队；轮次加一即清空了闭表
+    private void reorder() {
+        BucketQueue previous = open;
+        open = new BucketQueue();
+        iteration++;
+        spillFrom = Integer.MAX_VALUE; // f 值整体变了，溢出的分界等开表再次超限时重新确定
+        for (int node = previous.pop(); node >= 0; node = previous.pop()) requeue(node);
+        for (int i = 0; i < inconsCount; i++) requeue(incons[i]);
+        inconsCount = 0;
+    }
+
+    private void requeue(int node) {
+        if (visited.get(store.key(node)) != node || pruned(node)) return;
+        open.push(node, f(node), store.estimate(node));
+    }
+
+    private int f(int node) { return UNIT * store.cost(node) + weight * store.estimate(node); }
+
+    // 启发值可采纳，g + h 不小于当前解的结点不可能带来更短的解
+    private boolean pruned(int node) {
+        return incumbent >= 0 && store.cost(node) + store.estimate(node) >= store.cost(incumbent);
+    }
+
+    private void close(int node) {
+        if (node >= closedIn.length) closedIn = Arrays.copyOf(closedIn, Math.max(node + 1, closedIn.length * 2));
+        closedIn[node] = iteration;
+    }
+
+    private boolean isClosed(int node) { return node < closedIn.length && closedIn[node] == iteration; }
+
+    private int expandSteps(int cur) {
+        int hero = store.hero(cur);
+        for (int dir = 0; dir < 4; dir++) {
+            int newHero = board.next(hero, dir);
+            if (newHero < 0) continue;
+            store.copyBoxes(cur, boxes);
+            long key = store.key(cur) ^ board.heroKeys[hero] ^ board.heroKeys[newHero];
+            byte move = (byte) dir;
+            if (Board.has(boxes, newHero)) {
+                int nextPos = board.next(newHero, dir);
+                if (nextPos < 0 || Board.has(boxes, nextPos) || board.isDead(nextPos)) continue;
+
+                Board.flip(boxes, newHero);
+                Board.flip(boxes, nextPos);
+                if (isDeadlock(boxes, nextPos)) continue;
+                key ^= board.boxKeys[newHero] ^ board.boxKeys[nextPos];
+                move |= PUSH;
+            }
+
+            int cost = store.cost(cur) + ((move & PUSH) != 0 ? 0 : 1);
+            int goal = offer(cur, key, newHero, move, cost, newHero, board.next(newHero, dir));
+            if (goal >= 0) return goal;
+        }
+        return NOT_FOUND;
+    }
+
+    private int expandPushes(int cur) {
+        long[] nodes = store.boxes();
+        int offset = store.offset(cur), hero = store.hero(cur);
+
+        // 先在父结点的可达区域上收集所有可行的推动，子结点的泛洪会覆盖可达标记
+        int count = reach.pushes(nodes, offset, hero, pushes);
+        if (corralPruning) count = corrals.restrict(nodes, offset, hero, reach, pushes, count);
+
+        for (int i = 0; i < count; i++) {
+            int goal = push(cur, hero, pushes[i] / 4, pushes[i] % 4, macroPushes);
+            if (goal >= 0) return goal;
+            // 房间宏只是捷径：箱子也可能要先停在入口，单步推动同样生成，搜索才仍然完备、最优
+            if (macroPushes && macros.packed()) goal = push(cur, hero, pushes[i] / 4, pushes[i] % 4, false);
+            if (goal >= 0) return goal;
+        }
+        return NOT_FOUND;
+    }
+
+    // 把 box 处的箱子沿 dir 推一格（macro 时按宏推动推到底）生成子结点；若它是目标状态则返回其编号
+    private int push(int cur, int hero, int box, int dir, boolean macro) {
+        int target = board.next(box, dir), pushed = 1, parts = 1;
+        store.copyBoxes(cur, boxes);
+        if (macro) {
+            parts = macros.expand(boxes, box, dir, segments);
+            pushed = macros.pushes();
+            target = segments[parts - 1] / 4;
+            dir = segments[parts - 1] % 4;
+        } else {
+            Board.flip(boxes, box);
+            Board.flip(boxes, target);
+        }
+        if (isDeadlock(boxes, target)) return NOT_FOUND;
+        int parent = parts > 1 ? macroSteps(cur, target, parts) : cur;
+        int newHero = reach.fill(boxes, 0, board.next(target, (dir + 2) % 4));
+        long key = store.key(cur) ^ board.boxKeys[box] ^ board.boxKeys[target]
+                ^ board.heroKeys[hero] ^ board.heroKeys[newHero];
+        return offer(parent, key, newHero, (byte) (dir | PUSH), store.cost(cur) + pushed, box, target);
+    }
+
+    // 宏推动除最后一段外每段存一个中间结点，回溯时逐段拼出推动：它们不进开表也不登记闭表，
+    // 匹配状态沿用 cur 的，offer 据此修复被推箱子从起点到 target 的那一行。返回最后一个中间结点
+    private int macroSteps(int cur, int target, int parts) {
+        int parent = cur;
+        for (int j = 0; j < parts - 1; j++) {
+            int end = segments[j] / 4, dir = segments[j] % 4;
+            System.arraycopy(boxes, 0, macroBoxes, 0, board.words);
+            Board.flip(macroBoxes, target);
+            Board.flip(macroBoxes, end);
+            parent = store.add(macroBoxes, 0, board.next(end, (dir + 2) % 4), parent, (byte) (dir | PUSH | MACRO),
+                    store.cost(cur), store.estimate(cur));
+            if (incrementalHeuristic) store.setMatching(parent, store.matchings(), store.matchingOffset(cur));
+            charge();
+        }
+        return parent;
+    }
+
+    // boxes 中为待加入的状态，推动时箱子从 from 到了 to；若它是目标状态则返回其编号
+    private int offer(int parent, long key, int hero, byte move, int cost, int from, int to) {
+        // 任意时间模式下，已见过的状态只有找到更短的路径时才再生成一个结点
+        int existing = visited.get(key);
+        if (existing >= 0 && (!anytime || store.cost(existing) <= cost)) return NOT_FOUND;
+
+        // 启发值只在结点生成时计算一次；不存在有限费用的匹配说明有箱子永远到不了目标
+        int estimate;
+        if ((move & PUSH) == 0) {
+            estimate = store.estimate(parent);
+            if (incrementalHeuristic) {
+                System.arraycopy(store.matchings(), store.matchingOffset(parent), assignment, 0, assignment.length);
+            }
+        } else if (incrementalHeuristic) {
+            estimate = matching.repair(store.matchings(), store.matchingOffset(parent), from, to, assignment, 0);
+        } else {
+            estimate = matching.cost(boxes, 0);
+        }
+        if (estimate == Matching.INFINITE) return NOT_FOUND;
+        if (incumbent >= 0 && cost + estimate >= store.cost(incumbent)) return NOT_FOUND;
+        boolean solved = board.isSolved(boxes, 0);
+        if (!solved && spill(key, hero, parent, move, cost, estimate)) return NOT_FOUND;
+
+        int next = store.add(boxes, key, hero, parent, move, cost, estimate);
+        if (incrementalHeuristic) store.setMatching(next, assignment);
+        if (!visited.put(key, next)) outOfMemory = true;
+        charge();
+        if (solved) {
+            if (!anytime) return next;
+            incumbent = next;
+            onSolution.accept(next);
+            return NOT_FOUND;
+        }
+        enqueue(next, existing);
+        return NOT_FOUND;
+    }
+
+    // 每个结点按 nodeBytes 计入预算，与闭表的槽位合计，超出即内存用完
+    private void charge() {
+        if (store.bytes() + (visited == null ? 0 : visited.bytes()) > memoryBudget) outOfMemory = true;
+    }
+
+    // 新结点入开表；existing 为同一状态的旧结点，本轮已扩展过时改记入 INCONS
+    private void enqueue(int next, int existing) {
+        if (outOfMemory) return;
+        if (existing >= 0 && isClosed(existing)) {
+            // 本轮已扩展过这个状态：记入 INCONS，下一轮再处理，并让它继续算作本轮已关闭
+            if (inconsCount == incons.length) incons = Arrays.copyOf(incons, inconsCount * 2);
+            incons[inconsCount++] = next;
+            close(next);
+        } else {
+            open.push(next, f(next), store.estimate(next)); // f、h 在入队时算好，出队无需比较器
+        }
+    }
+
+    // 开表超过堆上的字节阈值后，f 不小于 spillFrom 的新结点写入外存开表，不占结点仓库与闭表。
+    // 每次超限把分界降到开表中现存的最大 f 以下，但至少留下最小的一个桶在内存里
+    private boolean spill(long key, int hero, int parent, byte move, int cost, int estimate) {
+        if (frontierBytes == Long.MAX_VALUE) return false;
+        int f = UNIT * cost + weight * estimate;
+        if (f < spillFrom) {
+            if (open.size() * store.nodeBytes() <= frontierBytes) return false;
+            spillFrom = Math.max(open.minF() + 1, Math.min(spillFrom - 1, open.maxF()));
+            if (f < spillFrom) return false;
+        }
+        try {
+            if (frontier == null) frontier = new ExternalFrontier(board.words, store.matchingStride());
+            frontier.add(f, weight, boxes, key, hero, parent, move, cost, estimate, assignment);
+            spilled++;
+            return true;
+        } catch (IOException e) {
+            System.out.println("Frontier spill failed, keeping it in memory: " + e.getMessage());
+            frontierBytes = Long.MAX_VALUE;
+            return false;
+        }
+    }
+
+    // 外存中可能有 f 小于开表最小 f 的结点时，按 f 从小到大一批批读回，开表里有了同样小的结点就先去扩展，
+    // 同一层剩下的记录等开表用完再读。批内已按键合并了重复状态，再与闭表比较，只有比已有结点路径更短的才入开表
+    private void unspill() {
+        try {
+            while (!frontier.isEmpty() && (open.isEmpty() || frontier.bound(weight) < open.minF())) {
+                int count = frontier.load(weight, frontier.bound(weight));
+                for (int i = 0; i < count && !outOfMemory; i++) {
+                    long key = frontier.key(i);
+                    int cost = frontier.cost(i), estimate = frontier.estimate(i);
+                    int existing = visited.get(key);
+                    if (existing >= 0 && (!anytime || store.cost(existing) <= cost)) continue;
+                    if (incumbent >= 0 && cost + estimate >= store.cost(incumbent)) continue;
+
+                    int next = store.add(frontier.boxes(), frontier.offset(i), key, frontier.hero(i),
+                            frontier.parent(i), frontier.move(i), cost, estimate);
+                    if (incrementalHeuristic) store.setMatching(next, frontier.matchings(), frontier.matchingOffset(i));
+                    if (!visited.put(key, next)) outOfMemory = true;
+                    charge();
+                    enqueue(next, existing);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to read spilled frontier: " + e.getMessage());
+            outOfMemory = true;
+        }
+    }
+
+    private void discardFrontier() {
+        if (frontier == null) return;
+        frontier.close();
+        frontier = null;
+    }
+
+    // 找到目标后才沿父指针回溯一次，拼出完整的 udlrUDLR 串
+    String steps(int node) {
+        int length = 0;
+        for (int cur = node; store.parent(cur) >= 0; cur = store.parent(cur)) length++;
+        int[] chain = new int[length];
+        for (int cur = node; store.parent(cur) >= 0; cur = store.parent(cur)) chain[--length] = cur;
+
+        StringBuilder steps = new StringBuilder();
+        int hero = startHero;
+        for (int cur : chain) {
+            byte move = store.move(cur);
+            int dir = move & 3;
+            if (!pushLevel) {
+                steps.append((move & PUSH) != 0 ? Character.toUpperCase(Solver.dir[dir]) : Solver.dir[dir]);
+                continue;
+            }
+
+            hero = appendPush(board, reach, store.boxes(), store.offset(store.parent(cur)), store.offset(cur), dir,
+                    hero, steps);
+        }
+        return steps.toString();
+    }
+
+    // 推箱模式的一个结点：比较父子结点的箱子位图得到被推箱子的起点与终点，追加英雄走到箱子后面的路径
+    // 和沿 dir 的推动，返回推完后英雄所在的格子
+    static int appendPush(Board board, Reachability reach, long[] nodes, int parentOffset, int childOffset, int dir,
+                          int hero, StringBuilder steps) {
+        int from = -1, to = -1;
+        for (int i = 0; i < board.words; i++) {
+            long before = nodes[parentOffset + i], after = nodes[childOffset + i];
+            if ((before & ~after) != 0) from = i * 64 + Long.numberOfTrailingZeros(before & ~after);
+            if ((after & ~before) != 0) to = i * 64 + Long.numberOfTrailingZeros(after & ~before);
+        }
+
+        reach.fill(nodes, parentOffset, hero);
+        reach.path(board.next(from, (dir + 2) % 4), steps);
+        for (int box = from; box != to; box = board.next(box, dir)) {
+            steps.append(Character.toUpperCase(Solver.dir[dir]));
+            hero = box;
+        }
+        return hero;
+    }
+
+    private boolean isDeadlock(long[] boxes, int box) {
+        return freezeDeadlocks && freeze.isDeadlock(boxes, box) || learnedDeadlocks && patterns.isDeadlock(boxes, box);
+    }
+
+}
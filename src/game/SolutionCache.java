@@ -0,0 +1,306 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 磁盘上的解缓存。键由地图文件内容的哈希与归一化后的状态（箱子位置加英雄区域的 Zobrist 键）组合而成。
+// archives/solutions.idx 是定长记录的索引：键、数据偏移、长度、解的起点英雄格、最近使用时刻、是否已证明最优；
+// archives/solutions.dat 顺序追加 udlrUDLR 串。索引第一次用到时整体读入内存，按最近使用排成 LRU，
+// 命中时只改写那条记录的使用时刻。解的总字节数超过 CAPACITY 时淘汰最久未用的，数据文件一半以上是死字节时整理
+class SolutionCache {
+    private static final int MAGIC = 0x534B5343, VERSION = 1, HEADER = 16, RECORD = 40;
+    private static final long CAPACITY = 4L << 20;
+    private static final long COMPACT_MIN = 64L << 10; // 数据文件小于这么多字节时不值得整理
+    private static SolutionCache shared = null;
+
+    private final Path indexPath, dataPath;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private int slots = 0;
+    private long tick = 0, liveBytes = 0, dataBytes = 0;
+    private boolean loaded = false;
+
+    // 一个缓存的解：steps 从英雄站在 hero 格时开始
+    static final class Hit {
+        final String steps;
+        final int hero;
+        final boolean optimal;
+
+        Hit(String steps, int hero, boolean optimal) {
+            this.steps = steps;
+            this.hero = hero;
+            this.optimal = optimal;
+        }
+    }
+
+    private static final class Entry {
+        final long key;
+        final int slot, length, hero;
+        final long offset;
+        final boolean optimal;
+        long tick;
+        String steps = null; // 读过或写过之后留在内存里，总量受 CAPACITY 限制
+
+        Entry(long key, int slot, long offset, int length, int hero, boolean optimal, long tick) {
+            this.key = key;
+            this.slot = slot;
+            this.offset = offset;
+            this.length = length;
+            this.hero = hero;
+            this.optimal = optimal;
+            this.tick = tick;
+        }
+    }
+
+    SolutionCache(Path directory) {
+        indexPath = directory.resolve("solutions.idx");
+        dataPath = directory.resolve("solutions.dat");
+    }
+
+    static synchronized SolutionCache shared() {
+        if (shared == null) shared = new SolutionCache(Paths.get("archives"));
+        return shared;
+    }
+
+    // 地图文件内容的 FNV-1a 哈希，读不到时返回 0，表示不使用缓存
+    static long hashFile(Path mapFile) {
+        try {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : Files.readAllBytes(mapFile)) hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            return hash == 0 ? 1 : hash;
+        } catch (IOException e) {
+            System.out.println("Solution cache disabled, cannot read " + mapFile + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // 地图哈希与归一化后状态的 Zobrist 键的组合；mapHash 为 0 时返回 0，键 0 同时留作索引里的空记录
+    static long key(long mapHash, Board board, long[] boxes, int hero) {
+        if (mapHash == 0) return 0;
+        long stateKey = board.key(boxes, new Reachability(board).fill(boxes, 0, hero));
+        long key = (mapHash ^ stateKey * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+        return key == 0 ? 1 : key;
+    }
+
+    synchronized int size() { return load() ? entries.size() : 0; }
+    synchronized boolean contains(long key) { return load() && entries.containsKey(key); } // 不改变 LRU 顺序
+
+    synchronized Hit get(long key) {
+        if (!load()) return null;
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+            String steps = read(entry);
+            entry.tick = ++tick;
+            index.write(ByteBuffer.allocate(8).putLong(0, entry.tick), slotPosition(entry.slot) + 24);
+            return new Hit(steps, entry.hero, entry.optimal);
+        } catch (IOException e) {
+            System.out.println("Failed to read cached solution: " + e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    // 已有最优解时不被非最优解替换；都最优或都非最优时只留推动次数更少的
+    synchronized void put(long key, int hero, boolean optimal, String steps) {
+        if (!load()) return;
+        Entry old = entries.get(key);
+        if (old != null && (old.optimal && !optimal || old.optimal == optimal && !shorter(steps, old))) return;
+
+        byte[] bytes = steps.getBytes(StandardCharsets.US_ASCII);
+        int slot = old != null ? old.slot : freeSlots.isEmpty() ? slots++ : freeSlots.poll();
+        try (FileChannel data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileChannel index = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.wrap(bytes);
+            while (out.hasRemaining()) data.write(out, dataBytes + out.position());
+            Entry entry = new Entry(key, slot, dataBytes, bytes.length, hero, optimal, ++tick);
+            entry.steps = steps;
+            writeRecord(index, entry);
+            dataBytes += bytes.length;
+            if (old != null) liveBytes -= old.length;
+            liveBytes += bytes.length;
+            entries.put(key, entry);
+
+            // 淘汰最久未用的条目，但至少留下刚放进来的这一条
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (liveBytes > CAPACITY && entries.size() > 1) {
+                Entry victim = eldest.next();
+                eldest.remove();
+                clearSlot(index, victim);
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to cache solution: " + e.getMessage());
+            return;
+        }
+        if (dataBytes > COMPACT_MIN && dataBytes > 2 * liveBytes) compact();
+    }
+
+    synchronized void remove(long key) {
+        if (!load()) return;
+        Entry entry = entries.remove(key);
+        if (entry == null) return;
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+            clearSlot(index, entry);
+        } catch (IOException e) {
+            System.out.println("Failed to remove cached solution: " + e.getMessage());
+        }
+    }
+
+    // 旧解读不出来时当作可以替换
+    private boolean shorter(String steps, Entry old) {
+        try {
+            return pushes(steps) < pushes(read(old));
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static int pushes(String steps) {
+        int pushes = 0;
+        for (int i = 0; i < steps.length(); i++) if (Character.isUpperCase(steps.charAt(i))) pushes++;
+        return pushes;
+    }
+
+    private String read(Entry entry) throws IOException {
+        if (entry.steps != null) return entry.steps;
+        try (FileChannel data = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocate(entry.length);
+            while (in.hasRemaining()) {
+                if (data.read(in, entry.offset + in.position()) < 0) throw new IOException("Solution data truncated");
+            }
+            return entry.steps = new String(in.array(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    private void clearSlot(FileChannel index, Entry entry) throws IOException {
+        index.write(ByteBuffer.allocate(8), slotPosition(entry.slot));
+        liveBytes -= entry.length;
+        freeSlots.add(entry.slot);
+    }
+
+    private static long slotPosition(int slot) { return HEADER + (long) slot * RECORD; }
+
+    private void writeRecord(FileChannel index, Entry entry) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(RECORD);
+        putRecord(out, entry);
+        out.clear();
+        index.write(out, slotPosition(entry.slot));
+    }
+
+    private static void putRecord(ByteBuffer out, Entry entry) {
+        out.putLong(entry.key).putLong(entry.offset).putInt(entry.length).putInt(entry.hero).putLong(entry.tick)
+                .put((byte) (entry.optimal ? 1 : 0));
+    }
+
+    // 第一次用到时读入索引；文件不存在、格式不符或读不了时从空缓存开始，之后整体重写
+    private boolean load() {
+        if (loaded) return true;
+        entries.clear();
+        freeSlots.clear();
+        slots = 0;
+        liveBytes = 0;
+        dataBytes = 0;
+        try {
+            Files.createDirectories(indexPath.getParent());
+            List<Entry> found = new ArrayList<>();
+            if (Files.exists(indexPath) && Files.exists(dataPath)) {
+                ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+                long size = Files.size(dataPath);
+                if (in.remaining() >= HEADER && in.getInt() == MAGIC && in.getInt() == VERSION) {
+                    slots = (in.limit() - HEADER) / RECORD;
+                    for (int slot = 0; slot < slots; slot++) {
+                        in.position((int) slotPosition(slot));
+                        long key = in.getLong(), offset = in.getLong();
+                        int length = in.getInt(), hero = in.getInt();
+                        long used = in.getLong();
+                        boolean optimal = in.get() != 0;
+                        if (key == 0 || offset + length > size) {
+                            freeSlots.add(slot);
+                            continue;
+                        }
+                        found.add(new Entry(key, slot, offset, length, hero, optimal, used));
+                        tick = Math.max(tick, used);
+                    }
+                    dataBytes = size;
+                }
+            }
+            found.sort((a, b) -> Long.compare(a.tick, b.tick));
+            for (Entry entry : found) {
+                entries.put(entry.key, entry);
+                liveBytes += entry.length;
+            }
+            if (dataBytes == 0) reset();
+            loaded = true;
+        } catch (IOException e) {
+            System.out.println("Solution cache unavailable: " + e.getMessage());
+        }
+        return loaded;
+    }
+
+    // 清空两个文件，只写索引头
+    private void reset() throws IOException {
+        entries.clear();
+        freeSlots.clear();
+        slots = 0;
+        liveBytes = 0;
+        dataBytes = 0;
+        Files.write(dataPath, new byte[0]);
+        Files.write(indexPath, ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).array());
+    }
+
+    // 按 LRU 顺序把仍在用的解写成新的数据文件与紧凑的索引，写完再替换旧文件
+    private void compact() {
+        Path data = dataPath.resolveSibling(dataPath.getFileName() + ".tmp");
+        Path index = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        List<Entry> compacted = new ArrayList<>();
+        ByteBuffer records = ByteBuffer.allocate(HEADER + entries.size() * RECORD).putInt(MAGIC).putInt(VERSION);
+        long offset = 0;
+        try (FileChannel in = FileChannel.open(dataPath, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(data, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry entry : entries.values()) {
+                for (long done = 0; done < entry.length; ) {
+                    done += in.transferTo(entry.offset + done, entry.length - done, out);
+                }
+                Entry moved = new Entry(entry.key, compacted.size(), offset, entry.length, entry.hero, entry.optimal,
+                        entry.tick);
+                moved.steps = entry.steps;
+                records.position((int) slotPosition(moved.slot));
+                putRecord(records, moved);
+                compacted.add(moved);
+                offset += entry.length;
+            }
+            Files.write(index, records.array());
+        } catch (IOException e) {
+            System.out.println("Failed to compact solution cache: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(data, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(index, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to replace solution cache files: " + e.getMessage());
+            loaded = false; // 两个文件可能已不一致，下次用到时重新读索引，坏掉的解由调用方重放校验后删除
+            return;
+        }
+        entries.clear();
+        freeSlots.clear();
+        for (Entry entry : compacted) entries.put(entry.key, entry);
+        slots = compacted.size();
+        dataBytes = offset;
+        System.out.println("Solution cache compacted to " + slots + " solutions, " + offset / 1024 + " KB");
+    }
+}
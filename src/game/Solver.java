@@ -1,238 +1,366 @@
 package game;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.PriorityQueue;
-
 import com.jme3.app.Application;
 
 import main.AlertState;
 import main.SettingState;
 
-class Position implements Comparable<Position> {
-    private static final int MAX_COLS = 12289;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+// 一个关卡状态的求解器。关卡上下文在构造时编译成 Board 后只读，每次 solve 的计时与取消状态各自独立，
+// 因此同一个或不同的 Solver 都可以在共享线程池上同时求解
+public class Solver {
+    public static final int dx[] = {0, 1, 0, -1};
+    public static final int dy[] = {1, 0, -1, 0};
+    public static final char dir[] = {'r', 'd', 'l', 'u'};
 
-    public int x, y;
+    // 组合求解的各策略另用一个有界线程池，避免与外层求解任务互相等待；守护线程不阻止程序退出
+    private static final ExecutorService PORTFOLIO_EXECUTOR = Executors.newFixedThreadPool(
+            Math.min(Portfolio.Strategy.values().length, Math.max(2, Runtime.getRuntime().availableProcessors())),
+            runnable -> {
+                Thread thread = new Thread(runnable, "solver-portfolio");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Application app;
+    private final Board board;
+    private final long[] boxes;
+    private final int hero;
+    private final Path mapFile;
+    private long mapHash, cacheKey; // 地图文件的哈希与解缓存的键，0 表示不使用缓存，由 cacheKey() 第一次调用时算出
+    private boolean hashed = false;
+
+    public Solver(Application app, int rows, int cols, int heroX, int heroY, char[][] map) {
+        this(app, rows, cols, heroX, heroY, map, null);
+    }
 
-    public Position(int x, int y) {
-        this.x = x;
-        this.y = y;
+    // mapFile 为关卡的地图文件，不为 null 时解存入磁盘上的解缓存，再求同一局面时直接取出
+    public Solver(Application app, int rows, int cols, int heroX, int heroY, char[][] map, Path mapFile) {
+        this.app = app;
+        board = new Board(map, rows, cols);
+        boxes = board.boxes(map);
+        hero = board.cell(heroX, heroY);
+        this.mapFile = mapFile;
     }
 
-    public int distance(Position other) {
-        return Math.abs(x - other.x) + Math.abs(y - other.y);
+    public CompletableFuture<String> solve(Consumer<String> onImproved) {
+        return solve(SolverScheduler.shared(), onImproved);
     }
 
-    @Override
-    public boolean equals(Object other) {
-        if (other instanceof Position) {
-            Position position = (Position) other;
-            return x == position.x && y == position.y;
+    // 任意时间求解：每找到更短的解就交给 onImproved（在求解线程中调用），完成时给出最好的解，无解或超时为 null。
+    // 取消返回的 future 会让正在运行的搜索在扩展下一个结点前退出，此时不再弹出提示
+    public CompletableFuture<String> solve(Executor executor, Consumer<String> onImproved) {
+        Attempt attempt = new Attempt(onImproved);
+        CompletableFuture<String> future;
+        try {
+            future = CompletableFuture.supplyAsync(attempt::run, executor);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Solve rejected: " + e.getMessage());
+            attempt.alert("Solver Busy", "Too many solves are waiting. Please try again later.");
+            return CompletableFuture.failedFuture(e);
         }
-        return false;
+        future.whenComplete((steps, e) -> {
+            if (future.isCancelled()) attempt.cancel();
+        });
+        return future;
     }
 
-    @Override
-    public int hashCode() { return x * MAX_COLS + y; }
-
-    @Override
-    public int compareTo(Position other) { return hashCode() - other.hashCode(); }
-}
-
-class Status {
-    private Position hero, boxes[];
-    private String steps;
-    private int cost;
-
-    public Status(Position hero, Position[] boxes, String steps, int cost) {
-        this.hero = hero;
-        this.boxes = boxes;
-        Arrays.sort(this.boxes);
-        this.steps = steps;
-        this.cost = cost;
+    // 要读地图文件，只在求解线程上调用，不占渲染线程
+    private synchronized long cacheKey() {
+        if (!hashed) {
+            mapHash = mapFile == null ? 0 : SolutionCache.hashFile(mapFile);
+            cacheKey = SolutionCache.key(mapHash, board, boxes, hero);
+            hashed = true;
+        }
+        return cacheKey;
     }
 
-    @Override
-    public boolean equals(Object other) {
-        if (other instanceof Status) {
-            Status status = (Status) other;
-            if (!hero.equals(status.hero)) return false;
-            if (boxes.length != status.boxes.length) return false;
-            for (int i = 0; i < boxes.length; i++) {
-                if (!boxes[i].equals(status.boxes[i])) return false;
+    // 缓存里有这个局面的解时直接用；没有时看关卡初始局面的缓存解（后台预先求解的）是否经过这个局面。
+    // 重放不通过的解从缓存里删掉
+    private String cached() {
+        long begin = System.nanoTime();
+        long own = cacheKey(), key = own;
+        if (own == 0) return null;
+        SolutionCache cache = SolutionCache.shared();
+        long[] start = boxes;
+        SolutionCache.Hit hit = cache.get(key);
+        if (hit == null) {
+            try {
+                PreSolver.Start level = PreSolver.readStart(mapFile);
+                if (level.board.cells != board.cells) return null;
+                key = SolutionCache.key(mapHash, board, level.boxes, level.hero);
+                start = level.boxes;
+            } catch (IOException e) {
+                return null;
             }
-            return true;
+            hit = key == own ? null : cache.get(key);
+            if (hit == null) return null;
+        }
+
+        String steps = follow(start, hit.hero, hit.steps, boxes, hero);
+        if (steps == null) return null; // 当前局面不在那条解上
+        if (!board.replays(boxes, hero, steps)) {
+            cache.remove(key);
+            return null;
         }
-        return false;
+        System.out.println(String.format("Cached %s solution replayed in %.3f ms",
+                hit.optimal ? "optimal" : "unproven", (System.nanoTime() - begin) / 1e6));
+        return steps;
     }
 
-    @Override
-    public int hashCode() {
-        int result = hero.hashCode();
-        for (Position box : boxes) result ^= box.hashCode();
-        return result;
+    // 玩家已按之前的解从求解时的局面走了 played，improved 是同一局面更短的解：它经过玩家现在的局面时，
+    // 返回从现在的局面接着走的步子，否则返回 null
+    public String resume(String played, String improved) {
+        if (played.isEmpty()) return improved;
+        long[] current = boxes.clone();
+        int at = hero;
+        for (int i = 0; i < played.length() && at >= 0; i++) at = board.move(current, at, played.charAt(i));
+        return at < 0 ? null : follow(boxes, hero, improved, current, at);
     }
 
-    public Position getHero() { return hero; }
-    public Position[] getBoxes() { return boxes; }
-    public String getSteps() { return steps; }
-    public int getCost() { return cost; }
-
-    public int heuristic() {
-        ArrayList<Position> unmatchedBoxes = new ArrayList<>();
-        ArrayList<Position> unmatchedGoals = new ArrayList<>();
-        final int total = boxes.length;
-        for (int i = 0, j = 0; i < total || j < total;) {
-            if (j == total || (i < total && boxes[i].compareTo(Solver.getGoals()[j]) < 0)) {
-                unmatchedBoxes.add(boxes[i]);
-                i++;
-            } else if (i == total || boxes[i].compareTo(Solver.getGoals()[j]) > 0) {
-                unmatchedGoals.add(Solver.getGoals()[j]);
-                j++;
-            } else {
-                i++;
-                j++;
+    // 从 (start, from) 出发按 solution 逐步重放；局面 (boxes, hero) 出现在解的某一步时，英雄先走到那一步的位置，
+    // 再接着走完剩下的步子。解经过的局面都不在时返回 null
+    private String follow(long[] start, int from, String solution, long[] boxes, int hero) {
+        if (from < 0 || from >= board.cells) return null;
+        Reachability reach = new Reachability(board);
+        reach.fill(boxes, 0, hero);
+        long[] current = start.clone();
+        for (int i = 0, at = from; at >= 0; at = board.move(current, at, solution.charAt(i++))) {
+            if (Arrays.equals(current, boxes) && reach.reached(at)) {
+                StringBuilder steps = new StringBuilder();
+                reach.path(at, steps);
+                return steps.append(solution, i, solution.length()).toString();
             }
+            if (i == solution.length()) return null;
         }
-        int result = 0;
-        for (int i = 0; i < unmatchedBoxes.size(); i++) {
-            result += unmatchedBoxes.get(i).distance(unmatchedGoals.get(i));
-        }
-        return result;
+        return null;
     }
-}
 
-public abstract class Solver {
-    private static final int MAX_RATE = 2;
-    public static final int dx[] = {0, 1, 0, -1};
-    public static final int dy[] = {1, 0, -1, 0};
-    public static final char dir[] = {'r', 'd', 'l', 'u'};
+    private final class Attempt {
+        private final Consumer<String> onImproved;
+        private final long startTime = System.currentTimeMillis();
+        private volatile boolean cancelled = false;
+        private boolean optimal = false; // 解已证明推动次数最少，缓存里不会再被其它解替换
+        private volatile Runnable stop = () -> {}; // 取消当前正在运行的搜索
 
-    private static Application app;
-    private static char[][] map;
-    private static Position[] goals;
-    private static long startTime;
-
-    public static String solve(Application app, int rows, int cols, int heroX, int heroY, char[][] map) {
-        Solver.app = app;
-        Solver.map = map;
-        ArrayList<Position> boxes = new ArrayList<>();
-        ArrayList<Position> goals = new ArrayList<>();
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                if (map[i][j] == 'B') {
-                    boxes.add(new Position(i, j));
-                    map[i][j] = ' ';
-                } else if (map[i][j] == 'X') {
-                    boxes.add(new Position(i, j));
-                    map[i][j] = '.';
-                    goals.add(new Position(i, j));
-                } else if (map[i][j] == '.') {
-                    goals.add(new Position(i, j));
-                }
+        Attempt(Consumer<String> onImproved) { this.onImproved = onImproved; }
+
+        void cancel() {
+            cancelled = true;
+            stop.run();
+        }
+
+        // 先登记取消钩子再检查标志，取消与开始搜索并发时也不会漏掉
+        private void watch(Runnable stop) {
+            this.stop = stop;
+            if (cancelled) stop.run();
+        }
+
+        // 解缓存要读索引与地图文件，也放在求解线程上查。无论哪种策略、是否找到解，求解中新证明的死锁模式都存回模式库
+        String run() {
+            String cached = cached();
+            if (cached != null) return found(cached, "solution cache");
+            try {
+                String steps = runStrategy();
+                if (steps != null && cacheKey() != 0) SolutionCache.shared().put(cacheKey(), hero, optimal, steps);
+                return steps;
+            } finally {
+                DeadlockPatterns.of(board).save();
             }
         }
-        Solver.goals = goals.toArray(new Position[0]);
 
-        startTime = System.currentTimeMillis();
-        return solve(new Status(new Position(heroX, heroY), boxes.toArray(new Position[0]), "", 0), 1);
-    }
+        private String runStrategy() {
+            long timeLimit = SettingState.getSolverTimeLimit() * 1000L;
+            long memoryBudget = SettingState.getSolverMemory() * (1L << 20);
+            SettingState.SolverStrategy strategy = SettingState.getSolverStrategy();
+            System.out.println("Solver strategy: " + strategy.getTitle());
+            switch (strategy) {
+                case APPROXIMATE: return solveApproximate(timeLimit, memoryBudget);
+                case PORTFOLIO: return solvePortfolio(timeLimit, memoryBudget);
+                case MEMORY_BOUNDED: return solveMemoryBounded(timeLimit, memoryBudget);
+                case BIDIRECTIONAL: return solveBidirectional(timeLimit, memoryBudget);
+                case PARALLEL: return solveParallel(timeLimit, memoryBudget);
+                default: return solveAnytime(timeLimit, memoryBudget);
+            }
+        }
 
-    private static String solve(Status status, int rate) {
-        HashMap<Status, Boolean> visited = new HashMap<>();
-        PriorityQueue<Status> queue = new PriorityQueue<>((a, b) ->
-                a.heuristic() * rate + a.getCost() - b.heuristic() * rate - b.getCost());
-        queue.add(status);
-        visited.put(status, true);
-
-        while (!queue.isEmpty()) {
-            Status cur = queue.poll();
-            Position hero = cur.getHero();
-            for (int dir = 0; dir < 4; dir++) {
-                Position newHero = new Position(hero.x + dx[dir], hero.y + dy[dir]);
-                if (map[newHero.x][newHero.y] == '#') continue;
-                Position boxes[] = cur.getBoxes().clone();
-                boolean valid = true;
-                char step = Solver.dir[dir];
-                for (int i = 0; i < boxes.length; i++) {
-                    if (boxes[i].equals(newHero)) {
-                        Position nextPos = new Position(boxes[i].x + dx[dir], boxes[i].y + dy[dir]);
-
-                        if (map[nextPos.x][nextPos.y] == '#') {
-                            valid = false;
-                            break;
-                        }
-
-                        boolean isBox = false;
-                        for (int j = 0; j < boxes.length; j++) if (boxes[j].equals(nextPos)) isBox = true;
-                        if (isBox) {
-                            valid = false;
-                            break;
-                        }
-
-                        if (map[nextPos.x][nextPos.y] != '.') {
-                            boolean flag = false;
-                            for (int dir2 = 0; dir2 < 4; dir2++) {
-                                Position nextPos2 = new Position(nextPos.x + dx[dir2], nextPos.y + dy[dir2]);
-                                int dir3 = (dir2 + 1) % 4;
-                                Position nextPos3 = new Position(nextPos.x - dx[dir3], nextPos.y - dy[dir3]);
-                                if (map[nextPos2.x][nextPos2.y] == '#' && map[nextPos3.x][nextPos3.y] == '#') {
-                                    flag = true;
-                                    break;
-                                }
-                            }
-                            if (flag) {
-                                valid = false;
-                                break;
-                            }
-                        }
-
-                        boxes[i] = nextPos;
-                        step = Character.toUpperCase(step);
-                        break;
-                    }
+        // 单线程的任意时间 A*，超时或取消时存检查点
+        private String solveAnytime(long timeLimit, long memoryBudget) {
+            Search search = new Search(board, boxes, hero, true);
+            search.memoryBudget = memoryBudget;
+            search.frontierBytes = Runtime.getRuntime().maxMemory() / 4; // 开表最多占堆的四分之一，其余溢出到磁盘
+            Path checkpoint = search.checkpointPath();
+            try {
+                if (search.restore(checkpoint)) {
+                    System.out.println("Resuming from " + checkpoint + " after " + search.expanded() + " expansions");
                 }
-                if (!valid) continue;
+            } catch (IOException e) {
+                System.out.println("Ignoring unreadable checkpoint " + checkpoint + ": " + e.getMessage());
+            }
+            watch(search::cancel);
+            String[] best = new String[1];
+            int goal = search.runAnytime(startTime + timeLimit, node -> {
+                if (best[0] == null) alertFound();
+                best[0] = search.steps(node);
+                System.out.println("Solution with " + search.cost(node) + " pushes found in " + formattedTime()
+                        + " seconds (weight " + search.weight() / 10.0 + ")");
+                onImproved.accept(best[0]);
+            });
+            StateTable visited = search.visited();
+            System.out.println(String.format("Closed set: %d states in %.1f MB off-heap, load factor %.2f",
+                    visited.size(), visited.bytes() / (double) (1 << 20), visited.loadFactor()));
+            if (search.spilled() > 0) System.out.println("Frontier: " + search.spilled() + " nodes spilled to disk");
+            checkpoint(search, checkpoint);
+            optimal = search.complete();
+            return goal >= 0 ? best[0] : fail(goal);
+        }
 
-                int cost = cur.getCost() + (Character.isUpperCase(step) ? 0 : 1);
-                Status next = new Status(newHero, boxes, cur.getSteps() + step, cost);
-                if (visited.containsKey(next)) continue;
+        // 证明了最优或无解就删掉检查点；超时或取消时存下来，下次求解同一局面接着搜
+        private void checkpoint(Search search, Path path) {
+            try {
+                if (search.complete()) {
+                    Files.deleteIfExists(path);
+                } else if (search.resumable()) {
+                    search.save(path);
+                    System.out.println("Checkpoint saved to " + path + " (" + Files.size(path) / 1024 + " KB)");
+                }
+            } catch (IOException e) {
+                System.out.println("Failed to update checkpoint " + path + ": " + e.getMessage());
+            }
+        }
 
-                if (next.heuristic() == 0) {
-                    long time = System.currentTimeMillis() - startTime;
-                    String formattedTime = String.format("%d.%03d", time / 1000, time % 1000);
-                    app.getStateManager().attach(new AlertState(
-                            "Solution Found",
-                            "Solution found in " + formattedTime + " seconds."
-                    ));
+        // 位状态哈希的 IDA*：只保留当前路径，每个状态只占 1~2 位，能搜比精确闭表大得多的地图，但可能漏掉解
+        private String solveApproximate(long timeLimit, long memoryBudget) {
+            BitstateTable table = new BitstateTable(BitstateTable.affordable(memoryBudget));
+            IdaSearch search = new IdaSearch(board, boxes, hero, table);
+            watch(search::cancel);
+            int pushes = search.run(startTime + timeLimit);
+            System.out.println(String.format("Bitstate: %d states in %.1f MB, omission probability %.2g",
+                    table.states(), table.bytes() / (double) (1 << 20), table.omissionProbability()));
+            if (pushes >= 0) return found(search.steps(), pushes + " pushes, approximate bitstate search");
+            if (pushes == Search.NOT_FOUND) {
+                alert("No Solution Found", "Approximate mode may skip states, so this does not prove "
+                        + "the level unsolvable. Turn it off in Settings for a complete search.");
+                return null;
+            }
+            return fail(pushes);
+        }
 
-                    return next.getSteps();
-                }
+        // 正向推与反向拉的双向 A*，相遇后拼成完整的正向 udlrUDLR 串，同样是推动次数最少的解
+        private String solveBidirectional(long timeLimit, long memoryBudget) {
+            BidirectionalSearch search = new BidirectionalSearch(board, boxes, hero, memoryBudget);
+            watch(search::cancel);
+            int pushes = search.run(startTime + timeLimit);
+            if (pushes >= 0) {
+                optimal = true;
+                return found(search.steps(), pushes + " pushes, bidirectional, " + search.forwardExpanded()
+                        + " forward and " + search.backwardExpanded() + " backward expansions");
+            }
+            return fail(pushes);
+        }
 
-                queue.add(next);
-                visited.put(next, true);
+        // IDA* 只用递归栈和固定大小的置换表，找到的第一个解即为推动次数最少的解
+        private String solveMemoryBounded(long timeLimit, long memoryBudget) {
+            IdaSearch search = new IdaSearch(board, boxes, hero, memoryBudget);
+            watch(search::cancel);
+            int pushes = search.run(startTime + timeLimit);
+            if (pushes >= 0) {
+                optimal = true;
+                return found(search.steps(), pushes + " pushes, IDA*, "
+                        + String.format("%.2f", search.table().loadFactor() * 100) + "% of the table used");
             }
+            return fail(pushes);
+        }
 
-            if ((System.currentTimeMillis() - startTime) * MAX_RATE > SettingState.getSolverTimeLimit() * 1000) {
-                if (rate == MAX_RATE) {
-                    app.getStateManager().attach(new AlertState(
-                            "Time Out",
-                            "No solution found within " + SettingState.getSolverTimeLimit() + " seconds."
-                    ));
-                    return null;
-                } else {
-                    return solve(status, rate + 1);
-                }
+        // 多线程 HDA*，返回找到的第一个解。额外的工作线程向调度器占名额，占不到的就少开几个
+        private String solveParallel(long timeLimit, long memoryBudget) {
+            SolverScheduler scheduler = SolverScheduler.shared();
+            int extra = scheduler.reserve(SettingState.getSolverThreads() - 1);
+            int goal;
+            ParallelSearch search;
+            try {
+                search = new ParallelSearch(board, boxes, hero, 1 + extra, memoryBudget);
+                watch(search::cancel);
+                goal = search.run(1, startTime + timeLimit, scheduler.workers());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                scheduler.release(extra);
+            }
+            if (goal >= 0) {
+                return found(search.steps(goal), search.threads() + " threads, " + search.expanded()
+                        + " nodes expanded");
             }
+            return fail(goal);
         }
 
-        app.getStateManager().attach(new AlertState(
-                "No Solution",
-                "No solution found."
-        ));
-        return null;
-    }
+        // 几种策略赛跑，采用最先得到的合法解
+        private String solvePortfolio(long timeLimit, long memoryBudget) {
+            Portfolio portfolio = new Portfolio(board, boxes, hero, PORTFOLIO_EXECUTOR, memoryBudget);
+            watch(portfolio::cancel);
+            String steps;
+            try {
+                steps = portfolio.solve(startTime + timeLimit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (steps != null) return found(steps, "portfolio, " + portfolio.winner() + " won");
+            return portfolio.exhausted() ? noSolution() : timeOut();
+        }
+
+        private String found(String steps, String detail) {
+            alertFound();
+            System.out.println("Solution found in " + formattedTime() + " seconds (" + detail + ")");
+            onImproved.accept(steps);
+            return steps;
+        }
+
+        private void alertFound() {
+            alert("Solution Found", "Solution found in " + formattedTime() + " seconds.");
+        }
+
+        private String formattedTime() {
+            long time = System.currentTimeMillis() - startTime;
+            return String.format("%d.%03d", time / 1000, time % 1000);
+        }
+
+        // 按搜索返回的状态提示玩家
+        private String fail(int status) {
+            if (status == Search.NOT_FOUND) return noSolution();
+            if (status == Search.OUT_OF_MEMORY) {
+                alert("Out of Memory", "The solver used up its " + SettingState.getSolverMemory()
+                        + " MB. Raise Solver Memory in Settings.");
+                return null;
+            }
+            return timeOut();
+        }
 
-    public static Position[] getGoals() { return goals; }
-}
\ No newline at end of file
+        private String noSolution() {
+            alert("No Solution", "No solution found.");
+            return null;
+        }
+
+        private String timeOut() {
+            alert("Time Out", "No solution found within " + SettingState.getSolverTimeLimit() + " seconds.");
+            return null;
+        }
+
+        // 已取消的求解不再打扰玩家；提示在主线程中挂到状态管理器上
+        private void alert(String title, String message) {
+            if (cancelled) return;
+            app.enqueue(() -> app.getStateManager().attach(new AlertState(title, message)));
+        }
+    }
+}
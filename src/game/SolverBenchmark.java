@@ -0,0 +1,128 @@
+package game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+// 在 assets/maps 的所有关卡上比较求解器配置展开的结点数，运行方式：gradlew benchmark；
+// 带参数 parallel 时改为测量并行搜索随线程数的加速比：gradlew parallelBenchmark；
+// 带参数 bidirectional 时比较双向搜索与单向 A*：gradlew bidirectionalBenchmark
+public class SolverBenchmark {
+    private static final String MAP_FILE_PATH = "assets/maps/";
+    private static final long TIME_LIMIT = 30000;
+    private static final int REPEAT = 5; // 加速比取多次运行中最快的一次
+
+    private static int rows, cols, heroX, heroY;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("parallel")) {
+            speedup();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bidirectional")) {
+            bidirectional();
+            return;
+        }
+
+        System.out.println("level | no freeze check | freeze check | + PI-corrals | + macros | + patterns | saved");
+        long total = 0, totalFreeze = 0, totalCorral = 0, totalMacro = 0, totalPattern = 0, macroTime = 0, patternTime = 0;
+        for (int level = 1; new File(MAP_FILE_PATH + level + ".txt").exists(); level++) {
+            char[][] map = readMap(level);
+            Board board = new Board(map, rows, cols);
+
+            int plain = expand(board, map, false, false, false, false);
+            int freeze = expand(board, map, true, false, false, false);
+            int corral = expand(board, map, true, true, false, false);
+            long start = System.nanoTime();
+            int macro = expand(board, map, true, true, true, false);
+            long middle = System.nanoTime();
+            int pattern = expand(board, map, true, true, true, true);
+            macroTime += middle - start;
+            patternTime += System.nanoTime() - middle;
+            total += plain;
+            totalFreeze += freeze;
+            totalCorral += corral;
+            totalMacro += macro;
+            totalPattern += pattern;
+            System.out.println(String.format("%5d | %15d | %12d | %12d | %8d | %10d | %4.1f%%", level, plain, freeze,
+                    corral, macro, pattern, 100.0 * (plain - pattern) / Math.max(plain, 1)));
+        }
+        System.out.println(String.format("total | %15d | %12d | %12d | %8d | %10d | %4.1f%%", total, totalFreeze,
+                totalCorral, totalMacro, totalPattern, 100.0 * (total - totalPattern) / Math.max(total, 1)));
+        // 模式检测省下的展开要与小搜索的耗时一起看，Search 默认关闭它正是因为这里后者更多
+        System.out.println(String.format("time: + macros %d ms, + patterns %d ms", macroTime / 1000000,
+                patternTime / 1000000));
+    }
+
+    // 死锁模式库按关卡共享，也会读入游戏里积累的模式，因此后几列的结果与之前的运行有关
+    private static int expand(Board board, char[][] map, boolean freezeDeadlocks, boolean corralPruning,
+                              boolean macroPushes, boolean learnedDeadlocks) {
+        Search search = new Search(board, board.boxes(map), board.cell(heroX, heroY), true);
+        search.freezeDeadlocks = freezeDeadlocks;
+        search.corralPruning = corralPruning;
+        search.macroPushes = macroPushes;
+        search.learnedDeadlocks = learnedDeadlocks;
+        int goal = search.run(1, System.currentTimeMillis() + TIME_LIMIT);
+        if (goal == Search.TIME_OUT) System.out.println("  (time out after " + TIME_LIMIT / 1000 + " seconds)");
+        return search.expanded();
+    }
+
+    // 线程数从 1 开始倍增到处理器数，统计所有关卡的总耗时
+    private static void speedup() throws IOException, InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("threads | time (ms) | expanded | speedup");
+        long base = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            long time = 0, expanded = 0;
+            for (int level = 1; new File(MAP_FILE_PATH + level + ".txt").exists(); level++) {
+                char[][] map = readMap(level);
+                Board board = new Board(map, rows, cols);
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < REPEAT; i++) {
+                    ParallelSearch search = new ParallelSearch(board, board.boxes(map), board.cell(heroX, heroY),
+                            threads, Long.MAX_VALUE);
+                    long start = System.nanoTime();
+                    search.run(1, System.currentTimeMillis() + TIME_LIMIT, SolverScheduler.shared().workers());
+                    best = Math.min(best, System.nanoTime() - start);
+                    if (i == 0) expanded += search.expanded();
+                }
+                time += best;
+            }
+            if (threads == 1) base = time;
+            System.out.println(String.format("%7d | %9.1f | %8d | %6.2fx", threads, time / 1e6, expanded,
+                    (double) base / time));
+            if (threads == cores) break;
+        }
+    }
+
+    // 两者都求推动次数最少的解，双向搜索的结点数为正向与反向之和
+    private static void bidirectional() throws IOException {
+        System.out.println("level | pushes | A* expanded | bidirectional (forward + backward)");
+        long total = 0, totalBidirectional = 0;
+        for (int level = 1; new File(MAP_FILE_PATH + level + ".txt").exists(); level++) {
+            char[][] map = readMap(level);
+            Board board = new Board(map, rows, cols);
+            long deadline = System.currentTimeMillis() + TIME_LIMIT;
+            Search search = new Search(board, board.boxes(map), board.cell(heroX, heroY), true);
+            int goal = search.run(1, deadline);
+            BidirectionalSearch bidirectional = new BidirectionalSearch(board, board.boxes(map),
+                    board.cell(heroX, heroY), Long.MAX_VALUE);
+            bidirectional.run(System.currentTimeMillis() + TIME_LIMIT);
+            total += search.expanded();
+            totalBidirectional += bidirectional.expanded();
+            System.out.println(String.format("%5d | %6d | %11d | %d (%d + %d)", level,
+                    goal >= 0 ? search.cost(goal) : -1, search.expanded(), bidirectional.expanded(),
+                    bidirectional.forwardExpanded(), bidirectional.backwardExpanded()));
+        }
+        System.out.println(String.format("total |        | %11d | %d", total, totalBidirectional));
+    }
+
+    private static char[][] readMap(int level) throws IOException {
+        MapFile file = MapFile.read(Paths.get(MAP_FILE_PATH + level + ".txt"));
+        rows = file.rows;
+        cols = file.cols;
+        heroX = file.heroX;
+        heroY = file.heroY;
+        return file.map;
+    }
+}
@@ -0,0 +1,143 @@
+package game;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 求解任务调度器：JDK 21 上每个求解一个虚拟线程，JDK 17 上用有界的平台线程池。
+// 同时运行的求解数受 maxRunning 限制，等待中的求解超过 maxQueued 时直接拒绝（准入控制）。
+// 后台任务（预先求解）同样排队占名额，但玩家的求解一提交就让它们让出名额。
+// 并行 A* 的额外工作线程也从这里占名额，跑在有界的守护线程池 workers 上
+public class SolverScheduler implements Executor {
+    private static final int MAX_QUEUED = 8;
+    private static final SolverScheduler SHARED = new SolverScheduler(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), MAX_QUEUED); // 留一个核给渲染
+
+    private final int maxRunning, maxQueued;
+    private final ExecutorService executor, workers;
+    private final boolean virtual;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger(), running = new AtomicInteger();
+    private final AtomicInteger background = new AtomicInteger(); // 已提交、尚未结束的后台任务
+    private final Set<Runnable> preemptions = ConcurrentHashMap.newKeySet(); // 后台任务的让出钩子
+    private final AtomicLong submitted = new AtomicLong(), rejected = new AtomicLong(), completed = new AtomicLong();
+
+    SolverScheduler(int maxRunning, int maxQueued) {
+        this.maxRunning = maxRunning;
+        this.maxQueued = maxQueued;
+        permits = new Semaphore(maxRunning);
+        ExecutorService virtualThreads = virtualThreads();
+        virtual = virtualThreads != null;
+        executor = virtual ? virtualThreads : Executors.newFixedThreadPool(maxRunning, runnable -> {
+            Thread thread = new Thread(runnable, "solver");
+            thread.setDaemon(true); // 不阻止程序退出
+            return thread;
+        });
+        workers = Executors.newFixedThreadPool(maxRunning, runnable -> { // 占到的名额不超过 maxRunning，不会排队
+            Thread thread = new Thread(runnable, "solver-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static SolverScheduler shared() { return SHARED; }
+
+    // JDK 21 之前没有虚拟线程，反射查找以便在 17 上照常编译运行
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // 玩家的求解：先让所有后台任务让出名额
+    @Override
+    public void execute(Runnable task) {
+        for (Runnable preempt : preemptions) preempt.run();
+        submit(task);
+    }
+
+    // 后台任务：玩家的求解提交时调用 preempt，任务应尽快存下进度并结束
+    void executeBackground(Runnable task, Runnable preempt) {
+        background.incrementAndGet();
+        preemptions.add(preempt);
+        try {
+            submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    preemptions.remove(preempt);
+                    background.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            preemptions.remove(preempt);
+            background.decrementAndGet();
+            throw e;
+        }
+    }
+
+    // 运行中的求解额外要 extra 个工作线程：只拿当前空闲的名额，不等待，返回拿到的个数，用完交给 release
+    int reserve(int extra) {
+        int granted = 0;
+        while (granted < extra && permits.tryAcquire()) granted++;
+        running.addAndGet(granted);
+        return granted;
+    }
+
+    void release(int granted) {
+        running.addAndGet(-granted);
+        permits.release(granted);
+    }
+
+    Executor workers() { return workers; }
+
+    private void submit(Runnable task) {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many solves waiting: " + this);
+        }
+        submitted.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                queued.decrementAndGet();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                running.decrementAndGet();
+                completed.incrementAndGet();
+                permits.release();
+            }
+        });
+    }
+
+    public int queueDepth() { return queued.get(); }
+    public int running() { return running.get(); }
+    public int foreground() { return queued.get() + running.get() - background.get(); } // 排队或运行中的玩家求解
+    public long submitted() { return submitted.get(); }
+    public long rejected() { return rejected.get(); }
+    public long completed() { return completed.get(); }
+    public boolean isVirtual() { return virtual; }
+
+    @Override
+    public String toString() {
+        return String.format("%s threads, %d/%d running, %d/%d queued, %d submitted, %d completed, %d rejected",
+                virtual ? "virtual" : "platform", running(), maxRunning, queueDepth(), maxQueued, submitted(),
+                completed(), rejected());
+    }
+}
@@ -0,0 +1,91 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// 以 64 位 Zobrist 键为键、结点编号为值的开放寻址（线性探测）哈希表，槽位放在堆外的直接缓冲区中：
+// 每槽 12 字节（键 8 字节 + 结点编号加一 4 字节，0 表示空槽），装载因子上限 0.75，平均每个状态约 16 字节。
+// 扩容会超出字节预算或直接内存不足时 put 失败，由搜索决定如何收场
+class StateTable {
+    private static final int SLOT_BYTES = 12;
+    private static final int INITIAL_SLOTS = 1 << 12;
+
+    private final long budget;
+    private ByteBuffer slots;
+    private int mask, size = 0;
+
+    StateTable() { this(Long.MAX_VALUE); }
+
+    StateTable(long budget) {
+        this.budget = budget;
+        slots = allocate(INITIAL_SLOTS);
+        mask = INITIAL_SLOTS - 1;
+    }
+
+    private static ByteBuffer allocate(int count) {
+        return ByteBuffer.allocateDirect(count * SLOT_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    // 不存在时返回 -1
+    int get(long key) {
+        for (int i = (int) key & mask; ; i = (i + 1) & mask) {
+            int node = slots.getInt(i * SLOT_BYTES + 8);
+            if (node == 0) return -1;
+            if (slots.getLong(i * SLOT_BYTES) == key) return node - 1;
+        }
+    }
+
+    // 插入或覆盖；表已满且不能在预算内扩容时返回 false
+    boolean put(long key, int node) {
+        int i = find(key);
+        if (slots.getInt(i * SLOT_BYTES + 8) == 0) {
+            if ((size + 1) * 4L > (mask + 1) * 3L) {
+                if (!grow()) return false;
+                i = find(key);
+            }
+            size++;
+        }
+        slots.putLong(i * SLOT_BYTES, key);
+        slots.putInt(i * SLOT_BYTES + 8, node + 1);
+        return true;
+    }
+
+    // 键所在的槽，或探测序列上的第一个空槽
+    private int find(long key) {
+        int i = (int) key & mask;
+        while (slots.getInt(i * SLOT_BYTES + 8) != 0 && slots.getLong(i * SLOT_BYTES) != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private boolean grow() {
+        long count = (mask + 1) * 2L;
+        if (count * SLOT_BYTES > Math.min(budget, Integer.MAX_VALUE)) return false;
+        ByteBuffer old = slots;
+        int oldCount = mask + 1;
+        try {
+            slots = allocate((int) count);
+        } catch (OutOfMemoryError e) {
+            return false; // 预算大于 JVM 允许的直接内存
+        }
+        mask = (int) count - 1;
+        for (int j = 0; j < oldCount; j++) {
+            int node = old.getInt(j * SLOT_BYTES + 8);
+            if (node == 0) continue;
+            long key = old.getLong(j * SLOT_BYTES);
+            int i = find(key);
+            slots.putLong(i * SLOT_BYTES, key);
+            slots.putInt(i * SLOT_BYTES + 8, node);
+        }
+        return true;
+    }
+
+    // 清空所有槽位但保留容量，供反复使用的小搜索
+    void clear() {
+        for (int i = 0; i <= mask; i++) slots.putInt(i * SLOT_BYTES + 8, 0);
+        size = 0;
+    }
+
+    int size() { return size; }
+    long bytes() { return (long) (mask + 1) * SLOT_BYTES; }
+    double loadFactor() { return (double) size / (mask + 1); }
+}
@@ -0,0 +1,58 @@
+package game;
+
+// IDA* 的固定大小置换表。每项 16 字节：64 位键，加上打包在一个 long 中的轮次、剩余深度、g 与学到的下界。
+// 两路组相联：冲突时淘汰旧轮次的项，同一轮次中保留剩余深度更大（其下搜索量更大）的项
+class TranspositionTable {
+    static final int ENTRY_BYTES = 16;
+    static final int DEAD = 0xFFFF; // 下界封顶值，表示从该状态出发无解
+
+    private final long[] keys, data; // data 为 0 表示空项
+    private final int mask;
+    private int size = 0;
+
+    TranspositionTable(long bytes) {
+        int entries = (int) Math.min(1L << 30, Long.highestOneBit(Math.max(bytes / ENTRY_BYTES, 2)));
+        keys = new long[entries];
+        data = new long[entries];
+        mask = entries - 1;
+    }
+
+    // 不存在时返回 -1
+    int probe(long key) {
+        int i = (int) key & mask;
+        if (data[i] != 0 && keys[i] == key) return i;
+        i ^= 1;
+        if (data[i] != 0 && keys[i] == key) return i;
+        return -1;
+    }
+
+    int iteration(int slot) { return (int) (data[slot] >>> 48); }
+    int draft(int slot) { return (int) (data[slot] >>> 32) & 0xFFFF; }
+    int g(int slot) { return (int) (data[slot] >>> 16) & 0xFFFF; }
+    int bound(int slot) { return (int) data[slot] & 0xFFFF; }
+
+    // iteration 从 1 开始，保证非空项的 data 不为 0
+    void store(long key, int iteration, int draft, int g, int bound) {
+        int i = (int) key & mask, victim;
+        if (data[i] == 0 || keys[i] == key) {
+            victim = i;
+        } else if (data[i ^ 1] == 0 || keys[i ^ 1] == key) {
+            victim = i ^ 1;
+        } else if (iteration(i) != iteration(i ^ 1)) {
+            victim = iteration(i) < iteration(i ^ 1) ? i : i ^ 1;
+        } else {
+            victim = draft(i) <= draft(i ^ 1) ? i : i ^ 1;
+        }
+        // 同一轮次中只有剩余深度不小于原项时才覆盖别的状态，自己的项总是更新
+        if (data[victim] != 0 && keys[victim] != key && iteration(victim) == (iteration & 0xFFFF)
+                && draft(victim) > draft) return;
+
+        if (data[victim] == 0) size++;
+        keys[victim] = key;
+        data[victim] = (long) (iteration & 0xFFFF) << 48 | (long) Math.min(draft, 0xFFFF) << 32
+                | (long) Math.min(g, 0xFFFF) << 16 | Math.min(bound, DEAD);
+    }
+
+    int capacity() { return keys.length; }
+    double loadFactor() { return (double) size / keys.length; }
+}
@@ -22,6 +22,7 @@ import com.simsilica.lemur.PasswordField;
 import com.simsilica.lemur.TextField;
 import com.simsilica.lemur.core.GuiControl;
 import com.simsilica.lemur.style.BaseStyles;
+import game.PreSolver;
 
 public class LoginState extends BaseAppState {
     private static final String USER_LIST_FILE = "archives/users.txt";
@@ -116,6 +117,7 @@ public class LoginState extends BaseAppState {
                         checkStatus(username); // 检查用户状态文件
 
                         Main.username = username; // 设置当前用户名
+                        PreSolver.start(LevelSelectionState.LEVEL_COUNT); // 后台预先求解各关卡的初始局面
 
                         getStateManager().detach(LoginState.this); // 移除当前状态
                         getStateManager().attach(new LevelSelectionState()); // 切换到关卡选择界面
@@ -17,6 +17,7 @@ import com.simsilica.lemur.PasswordField;
 import com.simsilica.lemur.TextField;
 import com.simsilica.lemur.core.GuiControl;
 import com.simsilica.lemur.style.BaseStyles;
+import game.PreSolver;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -163,6 +164,7 @@ public class RegisterState extends BaseAppState {
                         createStatus(username);
 
                         Main.username = username; // 设置当前用户名
+                        PreSolver.start(LevelSelectionState.LEVEL_COUNT); // 后台预先求解各关卡的初始局面
 
                         getStateManager().detach(RegisterState.this);
                         getStateManager().attach(new LevelSelectionState()); // 切换到关卡选择界面
@@ -18,12 +18,37 @@ public class SettingState extends BaseAppState {
     private static float moveSpeed = 0.8f;
     private static float rotateSpeed = 1.5f;
     private static int solverTimeLimit = 10;
+    private static int solverMemory = 64; // 求解器结点仓库、堆外闭表、置换表等结构的字节预算，单位 MB
+    private static int solverThreads = 1; // 并行 A* 的线程数
+    private static SolverStrategy solverStrategy = SolverStrategy.ANYTIME;
+
+    // 求解策略，同一时间只选一种：Solver 按它决定运行哪种搜索，设置界面的说明也取自这里
+    public enum SolverStrategy {
+        ANYTIME("Anytime A*", "improves the answer until the time limit"),
+        PARALLEL("Parallel A*", "hash-distributed over the solver threads"),
+        MEMORY_BOUNDED("IDA*", "memory-bounded, fixed-size table"),
+        BIDIRECTIONAL("Bidirectional", "pushes and pulls meet in the middle"),
+        PORTFOLIO("Portfolio", "races greedy, weighted A* and push-level"),
+        APPROXIMATE("Bitstate", "INCOMPLETE, may miss solutions; for huge maps");
+
+        private final String title, description;
+
+        SolverStrategy(String title, String description) {
+            this.title = title;
+            this.description = description;
+        }
+
+        public String getTitle() { return title; }
+        public String getDescription() { return description; }
+        public boolean isComplete() { return this != APPROXIMATE; } // 无解时能否断言真的无解
+    }
 
     private Application app;
     private Node guiNode;
     private Container container;
     private Picture back, about, settings;
-    private Label moveSpeedLabel, rotateSpeedLabel, solverTimeLimitLabel;
+    private Label moveSpeedLabel, rotateSpeedLabel, solverTimeLimitLabel, solverMemoryLabel, solverThreadsLabel,
+            solverStrategyLabel;
     private Button apply;
 
     @Override
@@ -45,6 +70,9 @@ public class SettingState extends BaseAppState {
     public static float getMoveSpeed() { return moveSpeed; }
     public static float getRotateSpeed() { return rotateSpeed; }
     public static int getSolverTimeLimit() { return solverTimeLimit; }
+    public static int getSolverMemory() { return solverMemory; }
+    public static int getSolverThreads() { return solverThreads; }
+    public static SolverStrategy getSolverStrategy() { return solverStrategy; }
 
     private void initInput() {
         app.getInputManager().addMapping("Click", new MouseButtonTrigger(MouseInput.BUTTON_LEFT));
@@ -160,6 +188,54 @@ public class SettingState extends BaseAppState {
             onEnable();
         });
 
+        // 求解器内存设置
+        solverMemoryLabel = settingForm.addChild(new Label("Solver Memory: " + solverMemory +
+                " MB (about " + solverMemory * 10 + "K states)")); // 结点加闭表槽位，每个状态约 100 字节
+        solverMemoryLabel.setFontSize(24);
+        solverMemoryLabel.setColor(ColorRGBA.White);
+        Slider solverMemorySlider = settingForm.addChild(new Slider(new DefaultRangedValueModel(16.0f, 1024.0f,
+                solverMemory)), 1);
+        setStyle(solverMemorySlider, 16.0f);
+        addButton(settingForm).addClickCommands(source -> {
+            Main.playClickSound();
+            solverMemory = (int) Math.round(solverMemorySlider.getModel().getValue() / 16) * 16;
+
+            onDisable();
+            onEnable();
+        });
+
+        // 求解器线程数设置，只有并行 A* 使用
+        solverThreadsLabel = settingForm.addChild(new Label("Solver Threads: " + solverThreads + " (Parallel A*)"));
+        solverThreadsLabel.setFontSize(24);
+        solverThreadsLabel.setColor(ColorRGBA.White);
+        Slider solverThreadsSlider = settingForm.addChild(new Slider(new DefaultRangedValueModel(1.0f,
+                Runtime.getRuntime().availableProcessors(), solverThreads)), 1);
+        setStyle(solverThreadsSlider, 1.0f);
+        addButton(settingForm).addClickCommands(source -> {
+            Main.playClickSound();
+            solverThreads = (int) Math.round(solverThreadsSlider.getModel().getValue());
+
+            onDisable();
+            onEnable();
+        });
+
+        // 求解策略设置：几种策略互斥，点一下换成下一种；近似模式必须讲清楚它可能漏掉解
+        solverStrategyLabel = settingForm.addChild(new Label("Solver Strategy: " + solverStrategy.getTitle() +
+                " (" + solverStrategy.getDescription() + ")"));
+        solverStrategyLabel.setFontSize(24);
+        solverStrategyLabel.setColor(solverStrategy.isComplete() ? ColorRGBA.White : ColorRGBA.Orange);
+        Button nextStrategy = settingForm.addChild(new Button("Next"), 2);
+        nextStrategy.setColor(ColorRGBA.White);
+        nextStrategy.setFontSize(24);
+        nextStrategy.addClickCommands(source -> {
+            Main.playClickSound();
+            SolverStrategy[] strategies = SolverStrategy.values();
+            solverStrategy = strategies[(solverStrategy.ordinal() + 1) % strategies.length];
+
+            onDisable();
+            onEnable();
+        });
+
         // 设置窗口位置
         container.setLocalTranslation(10, app.getCamera().getHeight() - 10, 0);
     }